@@ -0,0 +1,120 @@
+package com.example.xyzreader.data;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.content.pm.ProviderInfo;
+import android.database.DatabaseErrorHandler;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A context whose databases and shared preferences are kept apart from the app's, so tests can
+ * run the real classes without touching what the app stored. Every name gets a prefix of its
+ * own, and {@link #getApplicationContext()} returns this context so that code reaching for the
+ * application context stays isolated too.
+ */
+class IsolatedContext extends ContextWrapper {
+
+    private static final String PREFIX = "test-";
+
+    private final Set<String> mDatabases = new HashSet<>();
+    private final Set<String> mPreferences = new HashSet<>();
+
+    IsolatedContext(Context base) {
+
+        super(base.getApplicationContext());
+
+    }
+
+    @Override
+    public Context getApplicationContext() {
+
+        return this;
+
+    }
+
+    @Override
+    public File getDatabasePath(String name) {
+
+        return super.getDatabasePath(isolate(mDatabases, name));
+
+    }
+
+    @Override
+    public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+                                               SQLiteDatabase.CursorFactory factory) {
+
+        return super.openOrCreateDatabase(isolate(mDatabases, name), mode, factory);
+
+    }
+
+    @Override
+    public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+                                               SQLiteDatabase.CursorFactory factory,
+                                               DatabaseErrorHandler errorHandler) {
+
+        return super.openOrCreateDatabase(isolate(mDatabases, name), mode, factory,
+                errorHandler);
+
+    }
+
+    @Override
+    public boolean deleteDatabase(String name) {
+
+        return super.deleteDatabase(isolate(mDatabases, name));
+
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+
+        return super.getSharedPreferences(isolate(mPreferences, name), mode);
+
+    }
+
+    /**
+     * Start an {@link ItemsProvider} on this context, the way the system would. It is not
+     * registered, so it is only reached through the returned object, and must be shut down
+     * before {@link #clear()}.
+     */
+    ItemsProvider startProvider() {
+
+        final ProviderInfo info = new ProviderInfo();
+        info.authority = ItemsContract.CONTENT_AUTHORITY;
+        final ItemsProvider provider = new ItemsProvider();
+        provider.attachInfo(this, info);
+        return provider;
+
+    }
+
+    /**
+     * Delete every database and clear every preference file used through this context.
+     */
+    void clear() {
+
+        for (String name : mDatabases) {
+
+            super.deleteDatabase(name);
+
+        }
+        for (String name : mPreferences) {
+
+            super.getSharedPreferences(name, MODE_PRIVATE).edit().clear().commit();
+
+        }
+
+    }
+
+    private static String isolate(Set<String> names, String name) {
+
+        final String isolated = PREFIX + name;
+        names.add(isolated);
+        return isolated;
+
+    }
+
+}
@@ -0,0 +1,428 @@
+package com.example.xyzreader.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.example.xyzreader.data.ItemsProvider.Tables;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the {@link ItemsMigrations} steps against a database seeded with the version 2 schema
+ * and checks what each step carries forward.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ItemsMigrationsTest {
+
+    private static final String DATABASE_NAME = "migrations-test.db";
+    private static final String DATE = "2013-06-20T15:34:05.000";
+    // Long and repetitive enough to be stored compressed
+    private static final String LONG_PARAGRAPH = repeat("The gizmo hums along. ", 20).trim();
+
+    private IsolatedContext mContext;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+
+        // ItemsDatabase.onCreate clears the feed validators, which must not be the app's
+        mContext = new IsolatedContext(InstrumentationRegistry.getTargetContext());
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDb = SQLiteDatabase.openOrCreateDatabase(mContext.getDatabasePath(DATABASE_NAME), null);
+        mDb.setForeignKeyConstraintsEnabled(true);
+        createVersion2(mDb);
+
+    }
+
+    @After
+    public void tearDown() {
+
+        mDb.close();
+        mContext.clear();
+
+    }
+
+    @Test
+    public void everyVersionSinceTwoCanMigrate() {
+
+        assertTrue(ItemsMigrations.canMigrate(2, ItemsDatabase.DATABASE_VERSION));
+
+    }
+
+    @Test
+    public void migrateTo3_keepsFirstRowOfDuplicateServerIds() {
+
+        migrate(2, 3);
+
+        assertArrayEquals(new long[]{1, 3, 4}, queryItemIds());
+        assertEquals(1, count("SELECT COUNT(*) FROM " + Tables.ITEMS + " WHERE " +
+                ItemsContract.ItemsColumns.CONTENT_HASH + " IS NULL AND " +
+                ItemsContract.ItemsColumns.SERVER_ID + "='a'"));
+
+    }
+
+    @Test
+    public void migrateTo4_convertsDatesToMillis() throws Exception {
+
+        final long before = System.currentTimeMillis() / 1000 * 1000;
+        migrate(2, 4);
+        final long after = System.currentTimeMillis();
+
+        assertArrayEquals(new long[]{1, 3, 4}, queryItemIds());
+        // Read as local time, the way UpdaterService parses feed dates
+        final long expected = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US)
+                .parse(DATE).getTime();
+        assertEquals(expected, publishedDate(1));
+        assertEquals(expected, publishedDate(3));
+        // Unreadable dates become the time of the migration
+        final long unreadable = publishedDate(4);
+        assertTrue(unreadable >= before && unreadable <= after);
+
+    }
+
+    @Test
+    public void migrateTo5_splitsBodiesIntoParagraphs() {
+
+        migrate(2, 5);
+
+        assertEquals(2, count("SELECT COUNT(*) FROM " + Tables.PARAGRAPHS + " WHERE " +
+                ItemsContract.ParagraphsColumns.ITEM_ID + "=1"));
+        assertArrayEquals(new String[]{"First paragraph.", LONG_PARAGRAPH}, queryParagraphs(1));
+        assertArrayEquals(new String[]{"Only paragraph, broken across lines."},
+                queryParagraphs(3));
+
+    }
+
+    @Test
+    public void migrateTo6_indexesStoredArticlesForSearch() {
+
+        migrate(2, 6);
+
+        assertArrayEquals(new long[]{1}, search("gizmo"));
+        assertArrayEquals(new long[]{3}, search("Second"));
+        // Articles written after the migration are indexed by the triggers
+        final ContentValues values = item("d", "Gizmo again", DATE, "Body.");
+        final long id = mDb.insert(Tables.ITEMS, null, values);
+        assertArrayEquals(new long[]{1, id}, search("gizmo"));
+
+    }
+
+    @Test
+    public void migrateTo7_excerptsStoredBodies() {
+
+        migrate(2, 7);
+
+        assertEquals("Only paragraph, broken across lines.", DatabaseUtils.stringForQuery(mDb,
+                "SELECT " + ItemsContract.ItemsColumns.EXCERPT + " FROM " + Tables.ITEMS +
+                        " WHERE " + ItemsContract.ItemsColumns._ID + "=3", null));
+        assertEquals(0, count("SELECT COUNT(*) FROM " + Tables.ITEMS + " WHERE " +
+                ItemsContract.ItemsColumns.EXCERPT + " IS NULL"));
+
+    }
+
+    @Test
+    public void migrateTo8_compressesLongTextParagraphs() {
+
+        migrate(2, 7);
+        // Paragraphs are written compressed since version 8, put back one stored as text
+        mDb.execSQL("UPDATE " + Tables.PARAGRAPHS + " SET " +
+                ItemsContract.ParagraphsColumns.TEXT + "=? WHERE " +
+                ItemsContract.ParagraphsColumns.ITEM_ID + "=1 AND " +
+                ItemsContract.ParagraphsColumns.POSITION + "=1", new Object[]{LONG_PARAGRAPH});
+        migrate(7, 8);
+
+        assertEquals("blob", DatabaseUtils.stringForQuery(mDb, "SELECT typeof(" +
+                ItemsContract.ParagraphsColumns.TEXT + ") FROM " + Tables.PARAGRAPHS +
+                " WHERE " + ItemsContract.ParagraphsColumns.ITEM_ID + "=1 AND " +
+                ItemsContract.ParagraphsColumns.POSITION + "=1", null));
+        assertEquals("text", DatabaseUtils.stringForQuery(mDb, "SELECT typeof(" +
+                ItemsContract.ParagraphsColumns.TEXT + ") FROM " + Tables.PARAGRAPHS +
+                " WHERE " + ItemsContract.ParagraphsColumns.ITEM_ID + "=1 AND " +
+                ItemsContract.ParagraphsColumns.POSITION + "=0", null));
+        assertArrayEquals(new String[]{"First paragraph.", LONG_PARAGRAPH}, queryParagraphs(1));
+
+    }
+
+    @Test
+    public void migrateTo9_addsEmptyPlaceholderColors() {
+
+        migrate(2, 9);
+
+        assertEquals(3, count("SELECT COUNT(*) FROM " + Tables.ITEMS + " WHERE " +
+                ItemsContract.ItemsColumns.PLACEHOLDER_COLOR + " IS NULL"));
+
+    }
+
+    @Test
+    public void migrateTo10_startsArticlesUnseen() {
+
+        migrate(2, 10);
+
+        assertEquals(3, count("SELECT COUNT(*) FROM " + Tables.ITEMS + " WHERE " +
+                ItemsContract.ItemsColumns.SYNC_GENERATION + "=0"));
+
+    }
+
+    @Test
+    public void migrateTo11_keepsBodiesAsParagraphsOnly() {
+
+        migrate(2, 11);
+
+        assertEquals(0, count("SELECT COUNT(*) FROM " + Tables.ITEMS + " WHERE " +
+                ItemsContract.ItemsColumns.BODY + "!=''"));
+        assertArrayEquals(new String[]{"First paragraph.", LONG_PARAGRAPH}, queryParagraphs(1));
+        // Still found by words that are only in the body
+        assertArrayEquals(new long[]{1}, search("hums"));
+        assertArrayEquals(new long[]{3}, search("broken"));
+
+    }
+
+    @Test
+    public void migrateToCurrent_matchesFreshSchema() {
+
+        migrate(2, ItemsDatabase.DATABASE_VERSION);
+
+        final SQLiteDatabase fresh = SQLiteDatabase.create(null);
+        try {
+
+            new ItemsDatabase(mContext).onCreate(fresh);
+            for (String table : new String[]{Tables.ITEMS, Tables.PARAGRAPHS}) {
+
+                assertEquals(table, describe(fresh, table), describe(mDb, table));
+
+            }
+            assertEquals(describeSchema(fresh, "index"), describeSchema(mDb, "index"));
+            assertEquals(describeSchema(fresh, "trigger"), describeSchema(mDb, "trigger"));
+
+        }
+        finally {
+
+            fresh.close();
+
+        }
+        assertArrayEquals(new long[]{1, 3, 4}, queryItemIds());
+        assertArrayEquals(new long[]{1}, search("gizmo"));
+
+    }
+
+    /**
+     * The version 2 table, as it was created back then, with four articles: two sharing a
+     * server id, one whose body needs joining and one with a date that does not parse.
+     */
+    private static void createVersion2(SQLiteDatabase db) {
+
+        db.execSQL("CREATE TABLE " + Tables.ITEMS + " (" + ItemsContract.ItemsColumns._ID +
+                " INTEGER PRIMARY KEY AUTOINCREMENT," + ItemsContract.ItemsColumns.SERVER_ID +
+                " TEXT," + ItemsContract.ItemsColumns.TITLE + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.AUTHOR + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.BODY + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.THUMB_URL + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.PHOTO_URL + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.ASPECT_RATIO + " REAL NOT NULL DEFAULT 1.5," +
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + " TEXT NOT NULL" + ")");
+        db.insertOrThrow(Tables.ITEMS, null, item("a", "First",
+                DATE, "First paragraph.\r\n\r\n" + LONG_PARAGRAPH));
+        db.insertOrThrow(Tables.ITEMS, null, item("a", "First, again", DATE, "Duplicate."));
+        db.insertOrThrow(Tables.ITEMS, null, item("b", "Second", DATE,
+                "Only paragraph,\r\nbroken across lines."));
+        db.insertOrThrow(Tables.ITEMS, null, item("c", "Third", "not a date", "Third."));
+        db.setVersion(2);
+
+    }
+
+    private static ContentValues item(String serverId, String title, String publishedDate,
+                                      String body) {
+
+        final ContentValues values = new ContentValues();
+        values.put(ItemsContract.ItemsColumns.SERVER_ID, serverId);
+        values.put(ItemsContract.ItemsColumns.TITLE, title);
+        values.put(ItemsContract.ItemsColumns.AUTHOR, "Author");
+        values.put(ItemsContract.ItemsColumns.BODY, body);
+        values.put(ItemsContract.ItemsColumns.THUMB_URL, "https://example.com/thumb.jpg");
+        values.put(ItemsContract.ItemsColumns.PHOTO_URL, "https://example.com/photo.jpg");
+        values.put(ItemsContract.ItemsColumns.PUBLISHED_DATE, publishedDate);
+        return values;
+
+    }
+
+    /**
+     * Run the steps the way onUpgrade does, in one transaction.
+     */
+    private void migrate(int oldVersion, int newVersion) {
+
+        mDb.beginTransaction();
+        try {
+
+            ItemsMigrations.migrate(mDb, oldVersion, newVersion);
+            mDb.setVersion(newVersion);
+            mDb.setTransactionSuccessful();
+
+        }
+        finally {
+
+            mDb.endTransaction();
+
+        }
+
+    }
+
+    private long count(String sql) {
+
+        return DatabaseUtils.longForQuery(mDb, sql, null);
+
+    }
+
+    private long publishedDate(long id) {
+
+        return count("SELECT " + ItemsContract.ItemsColumns.PUBLISHED_DATE + " FROM " +
+                Tables.ITEMS + " WHERE " + ItemsContract.ItemsColumns._ID + "=" + id);
+
+    }
+
+    private long[] queryItemIds() {
+
+        return queryLongs("SELECT " + ItemsContract.ItemsColumns._ID + " FROM " + Tables.ITEMS +
+                " ORDER BY " + ItemsContract.ItemsColumns._ID);
+
+    }
+
+    private long[] search(String query) {
+
+        return queryLongs("SELECT docid FROM " + Tables.ITEMS_SEARCH + " WHERE " +
+                Tables.ITEMS_SEARCH + " MATCH '" + query + "' ORDER BY docid");
+
+    }
+
+    private long[] queryLongs(String sql) {
+
+        final Cursor cursor = mDb.rawQuery(sql, null);
+        try {
+
+            final long[] values = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+
+                values[i] = cursor.getLong(0);
+
+            }
+            return values;
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+    /**
+     * The paragraphs of an article in order, read the way the provider returns them.
+     */
+    private String[] queryParagraphs(long itemId) {
+
+        final Cursor cursor = new ParagraphCursor(mDb.query(Tables.PARAGRAPHS,
+                new String[]{ItemsContract.ParagraphsColumns.TEXT},
+                ItemsContract.ParagraphsColumns.ITEM_ID + "=" + itemId, null, null, null,
+                ItemsContract.ParagraphsColumns.POSITION));
+        try {
+
+            final String[] paragraphs = new String[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+
+                paragraphs[i] = cursor.getString(0);
+
+            }
+            return paragraphs;
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+    /**
+     * Name, type, constraints and default of each column, in order.
+     */
+    private static List<String> describe(SQLiteDatabase db, String table) {
+
+        final List<String> columns = new ArrayList<>();
+        final Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+
+            while (cursor.moveToNext()) {
+
+                columns.add(cursor.getString(cursor.getColumnIndexOrThrow("name")) + " " +
+                        cursor.getString(cursor.getColumnIndexOrThrow("type")) + " " +
+                        cursor.getInt(cursor.getColumnIndexOrThrow("notnull")) + " " +
+                        cursor.getString(cursor.getColumnIndexOrThrow("dflt_value")) + " " +
+                        cursor.getInt(cursor.getColumnIndexOrThrow("pk")));
+
+            }
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+        return columns;
+
+    }
+
+    /**
+     * The names of the schema objects of a type, sorted. Auto indexes are left out.
+     */
+    private static List<String> describeSchema(SQLiteDatabase db, String type) {
+
+        final List<String> names = new ArrayList<>();
+        final Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type=? AND " +
+                "name NOT LIKE 'sqlite_autoindex_%' ORDER BY name", new String[]{type});
+        try {
+
+            while (cursor.moveToNext()) {
+
+                names.add(cursor.getString(0));
+
+            }
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+        return names;
+
+    }
+
+    private static String repeat(String text, int count) {
+
+        final StringBuilder repeated = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+
+            repeated.append(text);
+
+        }
+        return repeated.toString();
+
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.example.xyzreader.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reader latency of the list's first-page query while one long write transaction is open on
+ * the provider. With write-ahead logging the reads run against the last commit and never wait
+ * for the writer. With a rollback journal they would wait for the whole transaction.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ItemsProviderConcurrencyTest {
+
+    private static final String TAG = "ItemsProviderConcurrency";
+    // Enough for the transaction to stay open for a few seconds
+    private static final int ARTICLES = 5000;
+    // The list's page size
+    private static final int PAGE_SIZE = 40;
+    // A read that is not blocked by the writer takes a few ms even on slow devices
+    private static final long MAX_READ_MILLIS = 250;
+
+    private IsolatedContext mContext;
+    private ItemsProvider mProvider;
+
+    @Before
+    public void setUp() {
+
+        mContext = new IsolatedContext(InstrumentationRegistry.getTargetContext());
+        mProvider = mContext.startProvider();
+
+    }
+
+    @After
+    public void tearDown() {
+
+        mProvider.shutdown();
+        mContext.clear();
+
+    }
+
+    @Test
+    public void readsDoNotWaitForWriteTransaction() throws Exception {
+
+        // One batch is one transaction, held open until the last article is written
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>(ARTICLES);
+        for (ContentValues values : TestArticles.articles(0, ARTICLES)) {
+
+            operations.add(ContentProviderOperation.newInsert(ItemsContract.Items.buildDirUri())
+                                                   .withValues(values).build());
+
+        }
+        final AtomicReference<Throwable> writerError = new AtomicReference<>();
+        final Thread writer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+
+                    mProvider.applyBatch(operations);
+
+                }
+                catch (Throwable t) {
+
+                    writerError.set(t);
+
+                }
+
+            }
+
+        });
+
+        final List<Long> latencies = new ArrayList<>();
+        // Reads that saw none of the articles ran while the transaction was open
+        int readsDuringTransaction = 0;
+        final long writeStart = SystemClock.elapsedRealtime();
+        writer.start();
+        while (writer.isAlive()) {
+
+            final long start = SystemClock.elapsedRealtime();
+            final Cursor cursor = mProvider.query(ItemsContract.Items.buildFirstPageUri(PAGE_SIZE),
+                    ArticleLoader.Query.PROJECTION, null, null, ItemsContract.Items.DEFAULT_SORT);
+            try {
+
+                // Fills the window, like the loader does before delivering
+                if (cursor.getCount() == 0) {
+
+                    readsDuringTransaction++;
+
+                }
+
+            }
+            finally {
+
+                cursor.close();
+
+            }
+            latencies.add(SystemClock.elapsedRealtime() - start);
+
+        }
+        writer.join();
+        final long writeMillis = SystemClock.elapsedRealtime() - writeStart;
+
+        if (writerError.get() != null) {
+
+            throw new AssertionError("Write failed", writerError.get());
+
+        }
+        assertEquals(ARTICLES, TestArticles.count(mProvider));
+        assertTrue("No reads ran during the transaction", readsDuringTransaction > 1);
+
+        Collections.sort(latencies);
+        final long median = latencies.get(latencies.size() / 2);
+        final long p95 = latencies.get(latencies.size() * 95 / 100);
+        final long max = latencies.get(latencies.size() - 1);
+        Log.i(TAG, "Transaction of " + ARTICLES + " articles took " + writeMillis + " ms, " +
+                latencies.size() + " reads: median " + median + " ms, p95 " + p95 +
+                " ms, max " + max + " ms");
+        assertTrue("Slowest read took " + max + " ms", max < MAX_READ_MILLIS);
+
+    }
+
+}
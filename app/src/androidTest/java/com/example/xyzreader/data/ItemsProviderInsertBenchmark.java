@@ -0,0 +1,107 @@
+package com.example.xyzreader.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Insert throughput of a 50k article synthetic feed through the provider's bulk insert, against
+ * the same articles written as one insert operation each through applyBatch. Both go in
+ * UpdaterService's batch size. Takes minutes on a device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ItemsProviderInsertBenchmark {
+
+    private static final String TAG = "ItemsProviderInsert";
+    private static final int ARTICLES = 50000;
+    private static final int BATCH_SIZE = 50;
+
+    private IsolatedContext mContext;
+    private ItemsProvider mProvider;
+
+    @Before
+    public void setUp() {
+
+        // 50k articles do not belong in the app's database
+        mContext = new IsolatedContext(InstrumentationRegistry.getTargetContext());
+        mProvider = mContext.startProvider();
+
+    }
+
+    @After
+    public void tearDown() {
+
+        mProvider.shutdown();
+        mContext.clear();
+
+    }
+
+    @Test
+    public void bulkInsertIsFasterThanInsertOperations() throws Exception {
+
+        final long operationsMillis = insertWithOperations();
+        assertEquals(ARTICLES, TestArticles.deleteAll(mProvider));
+        final long bulkMillis = insertWithBulkInsert();
+        assertEquals(ARTICLES, TestArticles.count(mProvider));
+
+        Log.i(TAG, ARTICLES + " articles: applyBatch " + rowsPerSecond(operationsMillis) +
+                " rows/s, bulkInsert " + rowsPerSecond(bulkMillis) + " rows/s");
+        assertTrue("bulkInsert took " + bulkMillis + " ms, applyBatch " + operationsMillis +
+                " ms", bulkMillis < operationsMillis);
+
+    }
+
+    private long insertWithOperations() throws Exception {
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>(BATCH_SIZE);
+        final long start = SystemClock.elapsedRealtime();
+        for (int from = 0; from < ARTICLES; from += BATCH_SIZE) {
+
+            for (ContentValues values : TestArticles.articles(from, BATCH_SIZE)) {
+
+                operations.add(ContentProviderOperation
+                        .newInsert(ItemsContract.Items.buildDirUri()).withValues(values)
+                        .build());
+
+            }
+            mProvider.applyBatch(operations);
+            operations.clear();
+
+        }
+        return SystemClock.elapsedRealtime() - start;
+
+    }
+
+    private long insertWithBulkInsert() {
+
+        final long start = SystemClock.elapsedRealtime();
+        for (int from = 0; from < ARTICLES; from += BATCH_SIZE) {
+
+            mProvider.bulkInsert(ItemsContract.Items.buildDirUri(),
+                    TestArticles.articles(from, BATCH_SIZE));
+
+        }
+        return SystemClock.elapsedRealtime() - start;
+
+    }
+
+    private static long rowsPerSecond(long millis) {
+
+        return ARTICLES * 1000L / Math.max(millis, 1);
+
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.example.xyzreader.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The search index follows articles written through the provider, although their bodies are
+ * only stored as paragraphs.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ItemsProviderSearchTest {
+
+    private IsolatedContext mContext;
+    private ItemsProvider mProvider;
+
+    @Before
+    public void setUp() {
+
+        mContext = new IsolatedContext(InstrumentationRegistry.getTargetContext());
+        mProvider = mContext.startProvider();
+
+    }
+
+    @After
+    public void tearDown() {
+
+        mProvider.shutdown();
+        mContext.clear();
+
+    }
+
+    @Test
+    public void insert_indexesBodyWithoutStoringIt() {
+
+        final long id = insert(1, "Walrus on the beach.");
+
+        assertArrayEquals(new long[]{id}, search("walrus"));
+        assertEquals("", queryBody(id));
+
+    }
+
+    @Test
+    public void update_replacesIndexedBody() {
+
+        final long id = insert(1, "Walrus on the beach.");
+        final ContentValues values = new ContentValues();
+        values.put(ItemsContract.Items.BODY, "Pelican on the pier.");
+        mProvider.update(ItemsContract.Items.buildItemUri(id), values, null, null);
+
+        assertArrayEquals(new long[0], search("walrus"));
+        assertArrayEquals(new long[]{id}, search("pelican"));
+
+    }
+
+    @Test
+    public void updateTitle_keepsIndexedBody() {
+
+        final long id = insert(1, "Walrus on the beach.");
+        final ContentValues values = new ContentValues();
+        values.put(ItemsContract.Items.TITLE, "Renamed");
+        mProvider.update(ItemsContract.Items.buildItemUri(id), values, null, null);
+
+        assertArrayEquals(new long[]{id}, search("walrus"));
+        assertArrayEquals(new long[]{id}, search("renamed"));
+        assertArrayEquals(new long[0], search("article"));
+
+    }
+
+    @Test
+    public void delete_removesIndexedBody() {
+
+        final long id = insert(1, "Walrus on the beach.");
+        final long other = insert(2, "Walrus in the zoo.");
+        mProvider.delete(ItemsContract.Items.buildItemUri(id), null, null);
+
+        assertArrayEquals(new long[]{other}, search("walrus"));
+        assertArrayEquals(new long[0], search("beach"));
+
+    }
+
+    private long insert(int n, String body) {
+
+        final ContentValues values = TestArticles.article(n);
+        values.put(ItemsContract.Items.BODY, body);
+        final Uri uri = mProvider.insert(ItemsContract.Items.buildDirUri(), values);
+        return ItemsContract.Items.getItemId(uri);
+
+    }
+
+    private long[] search(String query) {
+
+        final Cursor cursor = mProvider.query(ItemsContract.Search.buildSearchUri(query),
+                new String[]{ItemsContract.Search._ID}, null, null, null);
+        try {
+
+            final long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+
+                ids[i] = cursor.getLong(0);
+
+            }
+            return ids;
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+    private String queryBody(long id) {
+
+        final Cursor cursor = mProvider.query(ItemsContract.Items.buildItemUri(id),
+                new String[]{ItemsContract.Items.BODY}, null, null, null);
+        try {
+
+            cursor.moveToFirst();
+            return cursor.getString(0);
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+}
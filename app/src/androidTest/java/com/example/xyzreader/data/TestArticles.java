@@ -0,0 +1,98 @@
+package com.example.xyzreader.data;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * Synthetic articles for tests that write through {@link ItemsProvider}. They all carry a
+ * server id prefix of their own, so a test can count and remove them apart from any other
+ * articles in its database.
+ */
+final class TestArticles {
+
+    private static final String SERVER_ID_PREFIX = "test-";
+    private static final String PARAGRAPH = "A synthetic paragraph about nothing in particular, " +
+            "long enough to look like the feed and to be stored compressed. The quick brown fox " +
+            "jumps over the lazy dog while the gizmo hums along.";
+    private static final int PARAGRAPHS = 8;
+    // Spread out so pages of test articles sort in a stable order
+    private static final long PUBLISHED_DATE_STEP = 60 * 1000;
+
+    private TestArticles() {
+
+    }
+
+    static ContentValues article(int n) {
+
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < PARAGRAPHS; i++) {
+
+            if (i > 0) {
+
+                body.append("\r\n\r\n");
+
+            }
+            body.append(n).append(' ').append(PARAGRAPH);
+
+        }
+        final ContentValues values = new ContentValues();
+        values.put(ItemsContract.Items.SERVER_ID, SERVER_ID_PREFIX + n);
+        values.put(ItemsContract.Items.AUTHOR, "Author " + n);
+        values.put(ItemsContract.Items.TITLE, "Article " + n);
+        values.put(ItemsContract.Items.BODY, body.toString());
+        values.put(ItemsContract.Items.EXCERPT, ParagraphTokenizer.excerpt(body.toString(),
+                UpdaterService.EXCERPT_LENGTH));
+        values.put(ItemsContract.Items.THUMB_URL, "https://example.com/thumb/" + n + ".jpg");
+        values.put(ItemsContract.Items.PHOTO_URL, "https://example.com/photo/" + n + ".jpg");
+        values.put(ItemsContract.Items.ASPECT_RATIO, 1.5);
+        values.put(ItemsContract.Items.PUBLISHED_DATE, n * PUBLISHED_DATE_STEP);
+        values.put(ItemsContract.Items.CONTENT_HASH, Integer.toHexString(n));
+        return values;
+
+    }
+
+    static ContentValues[] articles(int from, int count) {
+
+        final ContentValues[] articles = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+
+            articles[i] = article(from + i);
+
+        }
+        return articles;
+
+    }
+
+    static int count(ContentProvider provider) {
+
+        final Cursor cursor = provider.query(ItemsContract.Items.buildDirUri(),
+                new String[]{ItemsContract.Items._ID}, ItemsContract.Items.SERVER_ID + " LIKE ?",
+                new String[]{SERVER_ID_PREFIX + "%"}, null);
+        if (cursor == null) {
+
+            return 0;
+
+        }
+        try {
+
+            return cursor.getCount();
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+    static int deleteAll(ContentProvider provider) {
+
+        return provider.delete(ItemsContract.Items.buildDirUri(),
+                ItemsContract.Items.SERVER_ID + " LIKE ?",
+                new String[]{SERVER_ID_PREFIX + "%"});
+
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.example.xyzreader.remote;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses synthetic feeds of 1k, 10k and 100k articles that are generated while they are read,
+ * so the feed itself never sits in memory. The heap still reachable halfway through a parse
+ * should be the same whatever the feed size.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ArticleFeedBenchmark {
+
+    private static final String TAG = "ArticleFeedBenchmark";
+    private static final int[] FEED_SIZES = {1000, 10000, 100000};
+    // Allowance for what the runtime itself allocates between measurements
+    private static final long MAX_RETAINED_GROWTH_BYTES = 2 * 1024 * 1024;
+
+    @Test
+    public void retainedMemoryDoesNotGrowWithFeedSize() throws Exception {
+
+        final long[] retained = new long[FEED_SIZES.length];
+        for (int i = 0; i < FEED_SIZES.length; i++) {
+
+            retained[i] = parse(FEED_SIZES[i]);
+
+        }
+        for (int i = 1; i < FEED_SIZES.length; i++) {
+
+            assertTrue(FEED_SIZES[i] + " articles retained " + retained[i] + " bytes, " +
+                            FEED_SIZES[0] + " retained " + retained[0],
+                    retained[i] - retained[0] < MAX_RETAINED_GROWTH_BYTES);
+
+        }
+
+    }
+
+    /**
+     * Parse a feed of {@code count} articles and return the heap retained halfway through,
+     * over what was in use before it started.
+     */
+    private static long parse(int count) throws IOException {
+
+        final long baseline = usedAfterGc();
+        long retained = 0;
+        final long start = SystemClock.elapsedRealtime();
+        final ArticleFeed feed = new ArticleFeed(syntheticResponse(count), getPreferences());
+        try {
+
+            int parsed = 0;
+            while (feed.hasNext()) {
+
+                final RemoteArticle article = feed.next();
+                assertTrue(article.isComplete());
+                if (++parsed == count / 2) {
+
+                    retained = usedAfterGc() - baseline;
+
+                }
+
+            }
+            assertEquals(count, parsed);
+
+        }
+        finally {
+
+            feed.close();
+
+        }
+        final long millis = SystemClock.elapsedRealtime() - start;
+        Log.i(TAG, count + " articles in " + millis + " ms (" +
+                count * 1000L / Math.max(millis, 1) + "/s), " + retained / 1024 +
+                " KiB retained halfway");
+        return retained;
+
+    }
+
+    private static long usedAfterGc() {
+
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+
+            runtime.gc();
+            runtime.runFinalization();
+
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+
+    }
+
+    private static SharedPreferences getPreferences() {
+
+        return InstrumentationRegistry.getTargetContext()
+                                      .getSharedPreferences(TAG, Context.MODE_PRIVATE);
+
+    }
+
+    private static Response syntheticResponse(int count) {
+
+        return new Response.Builder()
+                .request(new Request.Builder().url("https://example.com/feed").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("application/json"), -1,
+                        Okio.buffer(new SyntheticFeedSource(count))))
+                .build();
+
+    }
+
+    /**
+     * A JSON array of articles in the feed's format, written one article at a time as the
+     * reader asks for more.
+     */
+    private static class SyntheticFeedSource implements Source {
+
+        private static final String PARAGRAPH = "A synthetic paragraph about nothing in " +
+                "particular, long enough to look like the feed. The quick brown fox jumps " +
+                "over the lazy dog.";
+        private static final int PARAGRAPHS = 8;
+
+        private final Buffer mBuffer = new Buffer();
+        private final int mCount;
+        private int mNext;
+
+        SyntheticFeedSource(int count) {
+
+            mCount = count;
+
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) {
+
+            if (mBuffer.size() == 0 && !fill()) {
+
+                return -1;
+
+            }
+            return mBuffer.read(sink, byteCount);
+
+        }
+
+        /**
+         * Write the next article to the buffer, returning false once the array is complete.
+         */
+        private boolean fill() {
+
+            if (mNext >= mCount) {
+
+                return false;
+
+            }
+            mBuffer.writeUtf8(mNext == 0 ? "[" : ",");
+            mBuffer.writeUtf8("{\"id\":\"").writeUtf8(Integer.toString(mNext))
+                   .writeUtf8("\",\"title\":\"Article ").writeUtf8(Integer.toString(mNext))
+                   .writeUtf8("\",\"author\":\"Author\",\"body\":\"");
+            for (int i = 0; i < PARAGRAPHS; i++) {
+
+                if (i > 0) {
+
+                    mBuffer.writeUtf8("\\r\\n\\r\\n");
+
+                }
+                mBuffer.writeUtf8(PARAGRAPH);
+
+            }
+            mBuffer.writeUtf8("\",\"thumb\":\"https://example.com/thumb.jpg\"," +
+                    "\"photo\":\"https://example.com/photo.jpg\",\"aspect_ratio\":\"1.5\"," +
+                    "\"published_date\":\"2013-06-20T00:00:00.000\"}");
+            if (++mNext == mCount) {
+
+                mBuffer.writeUtf8("]");
+
+            }
+            return true;
+
+        }
+
+        @Override
+        public Timeout timeout() {
+
+            return Timeout.NONE;
+
+        }
+
+        @Override
+        public void close() {
+
+            mBuffer.clear();
+
+        }
+
+    }
+
+}
@@ -9,21 +9,52 @@ import android.support.v4.content.CursorLoader;
  */
 public class ArticleLoader extends CursorLoader {
 
+    /**
+     * All articles with the columns in {@link Query}, which leave out the body so that rows
+     * stay small however long the articles are.
+     */
     public static ArticleLoader newAllArticlesInstance(Context context) {
 
-        return new ArticleLoader(context, ItemsContract.Items.buildDirUri());
+        return new ArticleLoader(context, ItemsContract.Items.buildDirUri(), Query.PROJECTION);
 
     }
 
+    /**
+     * The newest {@code limit} articles, the first page of the keyset-paged list.
+     */
+    public static ArticleLoader newFirstPageInstance(Context context, int limit) {
+
+        return new ArticleLoader(context, ItemsContract.Items.buildFirstPageUri(limit),
+                Query.PROJECTION);
+
+    }
+
+    /**
+     * The {@code limit} articles following the given one in default sort order.
+     */
+    public static ArticleLoader newPageInstance(Context context, long beforePublishedDate,
+                                                long beforeId, int limit) {
+
+        return new ArticleLoader(context,
+                ItemsContract.Items.buildPageUri(beforePublishedDate, beforeId, limit),
+                Query.PROJECTION);
+
+    }
+
+    /**
+     * A single article with the columns in {@link DetailQuery}. The body is stored separately
+     * as {@link ItemsContract.Paragraphs}.
+     */
     public static ArticleLoader newInstanceForItemId(Context context, long itemId) {
 
-        return new ArticleLoader(context, ItemsContract.Items.buildItemUri(itemId));
+        return new ArticleLoader(context, ItemsContract.Items.buildItemUri(itemId),
+                DetailQuery.PROJECTION);
 
     }
 
-    private ArticleLoader(Context context, Uri uri) {
+    private ArticleLoader(Context context, Uri uri, String[] projection) {
 
-        super(context, uri, Query.PROJECTION, null, null, ItemsContract.Items.DEFAULT_SORT);
+        super(context, uri, projection, null, null, ItemsContract.Items.DEFAULT_SORT);
 
     }
 
@@ -32,7 +63,8 @@ public class ArticleLoader extends CursorLoader {
         String[] PROJECTION = {ItemsContract.Items._ID, ItemsContract.Items.TITLE,
                                ItemsContract.Items.PUBLISHED_DATE, ItemsContract.Items.AUTHOR,
                                ItemsContract.Items.THUMB_URL, ItemsContract.Items.PHOTO_URL,
-                               ItemsContract.Items.ASPECT_RATIO, ItemsContract.Items.BODY,};
+                               ItemsContract.Items.ASPECT_RATIO, ItemsContract.Items.EXCERPT,
+                               ItemsContract.Items.PLACEHOLDER_COLOR,};
         int _ID = 0;
         int TITLE = 1;
         int PUBLISHED_DATE = 2;
@@ -40,7 +72,25 @@ public class ArticleLoader extends CursorLoader {
         int THUMB_URL = 4;
         int PHOTO_URL = 5;
         int ASPECT_RATIO = 6;
-        int BODY = 7;
+        int EXCERPT = 7;
+        int PLACEHOLDER_COLOR = 8;
+
+    }
+
+    public interface DetailQuery {
+
+        String[] PROJECTION = {ItemsContract.Items._ID, ItemsContract.Items.TITLE,
+                               ItemsContract.Items.PUBLISHED_DATE, ItemsContract.Items.AUTHOR,
+                               ItemsContract.Items.PHOTO_URL,
+                               ItemsContract.Items.PARAGRAPH_COUNT,
+                               ItemsContract.Items.CONTENT_HASH,};
+        int _ID = 0;
+        int TITLE = 1;
+        int PUBLISHED_DATE = 2;
+        int AUTHOR = 3;
+        int PHOTO_URL = 4;
+        int PARAGRAPH_COUNT = 5;
+        int CONTENT_HASH = 6;
 
     }
 
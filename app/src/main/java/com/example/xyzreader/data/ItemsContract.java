@@ -7,6 +7,33 @@ public class ItemsContract {
     public static final String CONTENT_AUTHORITY = "com.example.xyzreader";
     private static final Uri BASE_URI = Uri.parse("content://com.example.xyzreader");
 
+    /**
+     * Query parameter capping the number of rows a directory URI returns.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Query parameter grouping the rows of a directory URI by a comma separated list of its
+     * columns, for projections with aggregate functions such as {@code COUNT(*)}.
+     */
+    public static final String QUERY_PARAMETER_GROUP_BY = "group_by";
+
+    /**
+     * Provider call answering the position of the article whose {@code _id} is passed as the
+     * argument within {@link Items#DEFAULT_SORT} order, in {@link #EXTRA_POSITION}. The position
+     * is -1 if there is no such article.
+     */
+    public static final String METHOD_GET_POSITION = "get_position";
+    public static final String EXTRA_POSITION = "position";
+
+    /**
+     * Provider calls bracketing a run of writes, such as a sync. Change notifications are held
+     * back from the first call until the matching release and then sent once, and the last
+     * release checkpoints the database. Every hold must be released.
+     */
+    public static final String METHOD_HOLD_NOTIFICATIONS = "hold_notifications";
+    public static final String METHOD_RELEASE_NOTIFICATIONS = "release_notifications";
+
     interface ItemsColumns {
 
         /**
@@ -26,7 +53,8 @@ public class ItemsContract {
          */
         String AUTHOR = "author";
         /**
-         * Type: TEXT NOT NULL
+         * Type: TEXT NOT NULL, written only. The body is stored as {@link Paragraphs} and
+         * reads back as an empty string.
          */
         String BODY = "body";
         /**
@@ -45,6 +73,74 @@ public class ItemsContract {
          * Type: INTEGER NOT NULL DEFAULT 0
          */
         String PUBLISHED_DATE = "published_date";
+        /**
+         * Type: TEXT
+         */
+        String CONTENT_HASH = "content_hash";
+        /**
+         * Type: TEXT, the start of the body, at most a few hundred characters
+         */
+        String EXCERPT = "excerpt";
+        /**
+         * Type: INTEGER, an ARGB colour taken from the thumbnail, null until it is computed
+         */
+        String PLACEHOLDER_COLOR = "placeholder_color";
+        /**
+         * Type: INTEGER NOT NULL DEFAULT 0, the sync that last found the article in the feed
+         */
+        String SYNC_GENERATION = "sync_generation";
+        /**
+         * Type: INTEGER, computed when queried, the number of stored paragraphs of the body
+         */
+        String PARAGRAPH_COUNT = "paragraph_count";
+
+    }
+
+    interface ParagraphsColumns {
+
+        /**
+         * Type: INTEGER PRIMARY KEY AUTOINCREMENT
+         */
+        String _ID = "_id";
+        /**
+         * Type: INTEGER NOT NULL REFERENCES items(_id) ON DELETE CASCADE
+         */
+        String ITEM_ID = "item_id";
+        /**
+         * Type: INTEGER NOT NULL
+         */
+        String POSITION = "position";
+        /**
+         * Type: TEXT NOT NULL, stored as a BLOB of raw deflate when that is smaller. The
+         * provider always returns it as text.
+         */
+        String TEXT = "text";
+
+    }
+
+    interface SearchColumns {
+
+        /**
+         * Type: INTEGER, the matching article's {@link ItemsColumns#_ID}
+         */
+        String _ID = "_id";
+        /**
+         * Type: TEXT
+         */
+        String TITLE = "title";
+        /**
+         * Type: TEXT
+         */
+        String AUTHOR = "author";
+        /**
+         * Type: TEXT, an excerpt of the best matching column with the matches in {@code <b>},
+         * or the article's {@link ItemsColumns#EXCERPT} if only the body matches
+         */
+        String SNIPPET = "snippet";
+        /**
+         * Type: REAL, higher is a better match
+         */
+        String RANK = "rank";
 
     }
 
@@ -54,7 +150,14 @@ public class ItemsContract {
                 "vnd.android.cursor.dir/vnd.com.example.xyzreader.items";
         public static final String CONTENT_ITEM_TYPE =
                 "vnd.android.cursor.item/vnd.com.example.xyzreader.items";
-        public static final String DEFAULT_SORT = PUBLISHED_DATE + " DESC";
+        // _id breaks ties between articles published at the same time, which keyset paging
+        // relies on
+        public static final String DEFAULT_SORT = PUBLISHED_DATE + " DESC, " + _ID + " DESC";
+        /**
+         * Query parameter of the form {@code <published_date>,<_id>}: only articles after that
+         * one in {@link #DEFAULT_SORT} order are returned, and always in that order.
+         */
+        public static final String QUERY_PARAMETER_BEFORE = "before";
 
         /**
          * Matches: /items/
@@ -65,6 +168,29 @@ public class ItemsContract {
 
         }
 
+        /**
+         * Matches: /items/?limit=[limit]
+         */
+        public static Uri buildFirstPageUri(int limit) {
+
+            return buildDirUri().buildUpon()
+                                .appendQueryParameter(QUERY_PARAMETER_LIMIT,
+                                        Integer.toString(limit)).build();
+
+        }
+
+        /**
+         * Matches: /items/?before=[published_date],[_id]&limit=[limit]
+         */
+        public static Uri buildPageUri(long beforePublishedDate, long beforeId, int limit) {
+
+            return buildFirstPageUri(limit).buildUpon()
+                                           .appendQueryParameter(QUERY_PARAMETER_BEFORE,
+                                                   beforePublishedDate + "," + beforeId)
+                                           .build();
+
+        }
+
         /**
          * Matches: /items/[_id]/
          */
@@ -85,6 +211,58 @@ public class ItemsContract {
 
     }
 
+    public static class Paragraphs implements ParagraphsColumns {
+
+        public static final String CONTENT_TYPE =
+                "vnd.android.cursor.dir/vnd.com.example.xyzreader.paragraphs";
+        public static final String DEFAULT_SORT = POSITION + " ASC";
+        /**
+         * Query parameter: only paragraphs at this position or later are returned.
+         */
+        public static final String QUERY_PARAMETER_FROM = "from";
+
+        /**
+         * Matches: /items/[_id]/paragraphs/
+         */
+        public static Uri buildDirUri(long itemId) {
+
+            return Items.buildItemUri(itemId).buildUpon().appendPath("paragraphs").build();
+
+        }
+
+        /**
+         * Matches: /items/[_id]/paragraphs/?from=[position]&limit=[limit]
+         */
+        public static Uri buildRangeUri(long itemId, int fromPosition, int limit) {
+
+            return buildDirUri(itemId).buildUpon()
+                                      .appendQueryParameter(QUERY_PARAMETER_FROM,
+                                              Integer.toString(fromPosition))
+                                      .appendQueryParameter(QUERY_PARAMETER_LIMIT,
+                                              Integer.toString(limit)).build();
+
+        }
+
+    }
+
+    public static class Search implements SearchColumns {
+
+        public static final String CONTENT_TYPE =
+                "vnd.android.cursor.dir/vnd.com.example.xyzreader.search";
+        public static final String QUERY_PARAMETER_QUERY = "q";
+
+        /**
+         * Matches: /items/search?q=[query]
+         */
+        public static Uri buildSearchUri(String query) {
+
+            return BASE_URI.buildUpon().appendPath("items").appendPath("search")
+                           .appendQueryParameter(QUERY_PARAMETER_QUERY, query).build();
+
+        }
+
+    }
+
     private ItemsContract() {
 
     }
@@ -1,25 +1,85 @@
 package com.example.xyzreader.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.xyzreader.remote.RemoteEndpointUtil;
+
 import static com.example.xyzreader.data.ItemsProvider.Tables;
 
 class ItemsDatabase extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "xyzreader.db";
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 11;
+    // Page cache of the writing connection in KiB, the default 2 MB is outgrown by a sync
+    private static final int CACHE_SIZE_KIB = 4096;
+    // The log is cut back to this size whenever a checkpoint finds it larger
+    private static final int JOURNAL_SIZE_LIMIT = 1024 * 1024;
+    // Compiled statements kept per connection, keyed by their SQL. Provider queries bind all
+    // values as arguments, so each query shape compiles once and is reused after that.
+    private static final int SQL_CACHE_SIZE = 100;
+
+    private final Context mContext;
 
     public ItemsDatabase(Context context) {
 
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
+        // Loaders keep reading committed data on their own connections while a sync writes
+        setWriteAheadLoggingEnabled(true);
+
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+
+        // Paragraphs are removed together with their article
+        db.setForeignKeyConstraintsEnabled(true);
+        db.setMaxSqlCacheSize(SQL_CACHE_SIZE);
+        // Only applies to the primary connection, which is the one doing the writing
+        db.execSQL("PRAGMA cache_size=-" + CACHE_SIZE_KIB);
+        DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit=" + JOURNAL_SIZE_LIMIT, null);
 
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
 
+        createItemsTable(db);
+        createParagraphsTable(db);
+        createSearchIndex(db);
+
+        // An empty table must not be kept empty by a "not modified" answer
+        RemoteEndpointUtil.clearValidators(mContext);
+
+    }
+
+    /**
+     * Copy the write-ahead log back into the database without waiting for readers. Meant to run
+     * once a long run of writes is over, rather than leaving it to the automatic checkpoints
+     * that would otherwise fire in the middle of the next run.
+     */
+    static void checkpoint(SQLiteDatabase db) {
+
+        final Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+
+            cursor.moveToFirst();
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+    private static void createItemsTable(SQLiteDatabase db) {
+
         db.execSQL("CREATE TABLE " + Tables.ITEMS + " (" + ItemsContract.ItemsColumns._ID +
                 " INTEGER PRIMARY KEY AUTOINCREMENT," + ItemsContract.ItemsColumns.SERVER_ID +
                 " TEXT," + ItemsContract.ItemsColumns.TITLE + " TEXT NOT NULL," +
@@ -28,15 +88,65 @@ class ItemsDatabase extends SQLiteOpenHelper {
                 ItemsContract.ItemsColumns.THUMB_URL + " TEXT NOT NULL," +
                 ItemsContract.ItemsColumns.PHOTO_URL + " TEXT NOT NULL," +
                 ItemsContract.ItemsColumns.ASPECT_RATIO + " REAL NOT NULL DEFAULT 1.5," +
-                ItemsContract.ItemsColumns.PUBLISHED_DATE + " TEXT NOT NULL" + ")");
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + " INTEGER NOT NULL DEFAULT 0," +
+                ItemsContract.ItemsColumns.CONTENT_HASH + " TEXT," +
+                ItemsContract.ItemsColumns.EXCERPT + " TEXT," +
+                ItemsContract.ItemsColumns.PLACEHOLDER_COLOR + " INTEGER," +
+                ItemsContract.ItemsColumns.SYNC_GENERATION + " INTEGER NOT NULL DEFAULT 0" + ")");
+        db.execSQL("CREATE UNIQUE INDEX " + Tables.ITEMS + "_" +
+                ItemsContract.ItemsColumns.SERVER_ID + " ON " + Tables.ITEMS + " (" +
+                ItemsContract.ItemsColumns.SERVER_ID + ")");
+        db.execSQL("CREATE INDEX " + Tables.ITEMS + "_" +
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + " ON " + Tables.ITEMS + " (" +
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + "," + ItemsContract.ItemsColumns._ID +
+                ")");
+
+    }
+
+    static void createParagraphsTable(SQLiteDatabase db) {
+
+        db.execSQL("CREATE TABLE " + Tables.PARAGRAPHS + " (" +
+                ItemsContract.ParagraphsColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                ItemsContract.ParagraphsColumns.ITEM_ID + " INTEGER NOT NULL REFERENCES " +
+                Tables.ITEMS + "(" + ItemsContract.ItemsColumns._ID + ") ON DELETE CASCADE," +
+                ItemsContract.ParagraphsColumns.POSITION + " INTEGER NOT NULL," +
+                ItemsContract.ParagraphsColumns.TEXT + " TEXT NOT NULL" + ")");
+        db.execSQL("CREATE UNIQUE INDEX " + Tables.PARAGRAPHS + "_" +
+                ItemsContract.ParagraphsColumns.ITEM_ID + " ON " + Tables.PARAGRAPHS + " (" +
+                ItemsContract.ParagraphsColumns.ITEM_ID + "," +
+                ItemsContract.ParagraphsColumns.POSITION + ")");
+
+    }
+
+    /**
+     * Full-text index over title, author and body. Title and author are read back from the
+     * items table (external content), so no text is stored twice. The body is only stored as
+     * paragraphs, so the index is written by {@link SearchIndexWriter} rather than by triggers.
+     */
+    static void createSearchIndex(SQLiteDatabase db) {
+
+        db.execSQL("CREATE VIRTUAL TABLE " + Tables.ITEMS_SEARCH + " USING fts4(content=\"" +
+                Tables.ITEMS + "\", " + ItemsContract.ItemsColumns.TITLE + ", " +
+                ItemsContract.ItemsColumns.AUTHOR + ", " + ItemsContract.ItemsColumns.BODY +
+                ", tokenize=unicode61, prefix=\"3\")");
 
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 
-        db.execSQL("DROP TABLE IF EXISTS " + Tables.ITEMS);
-        onCreate(db);
+        if (ItemsMigrations.canMigrate(oldVersion, newVersion)) {
+
+            ItemsMigrations.migrate(db, oldVersion, newVersion);
+
+        }
+        else {
+
+            // Too old to carry forward, start over from the feed
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.ITEMS);
+            onCreate(db);
+
+        }
 
     }
 
@@ -0,0 +1,409 @@
+package com.example.xyzreader.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.SparseArray;
+
+import static com.example.xyzreader.data.ItemsProvider.Tables;
+
+/**
+ * Steps that carry a stored {@link ItemsDatabase} forward one schema version at a time, keeping
+ * the articles already downloaded. A step may only rely on the schema of the version it starts
+ * from and must create exactly the schema of the version it produces. Steps that borrow a
+ * create statement from {@link ItemsDatabase} get a frozen copy once that statement changes.
+ */
+class ItemsMigrations {
+
+    interface Migration {
+
+        void migrate(SQLiteDatabase db);
+
+    }
+
+    // Keyed by the version each step starts from
+    private static final SparseArray<Migration> sMigrations = new SparseArray<>();
+
+    static {
+
+        sMigrations.put(2, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                addContentHash(db);
+
+            }
+
+        });
+        sMigrations.put(3, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                migratePublishedDateToMillis(db);
+
+            }
+
+        });
+        sMigrations.put(4, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                ItemsDatabase.createParagraphsTable(db);
+                splitStoredBodies(db);
+
+            }
+
+        });
+        sMigrations.put(5, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                createVersion6SearchIndex(db);
+                db.execSQL("INSERT INTO " + Tables.ITEMS_SEARCH + "(" + Tables.ITEMS_SEARCH +
+                        ") VALUES ('rebuild')");
+
+            }
+
+        });
+        sMigrations.put(6, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                db.execSQL("ALTER TABLE " + Tables.ITEMS + " ADD COLUMN " +
+                        ItemsContract.ItemsColumns.EXCERPT + " TEXT");
+                excerptStoredBodies(db);
+
+            }
+
+        });
+        sMigrations.put(7, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                compressStoredParagraphs(db);
+
+            }
+
+        });
+        sMigrations.put(8, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                // Filled in for every article by the next sync
+                db.execSQL("ALTER TABLE " + Tables.ITEMS + " ADD COLUMN " +
+                        ItemsContract.ItemsColumns.PLACEHOLDER_COLOR + " INTEGER");
+
+            }
+
+        });
+        sMigrations.put(9, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                // Set for every article in the feed by the next sync
+                db.execSQL("ALTER TABLE " + Tables.ITEMS + " ADD COLUMN " +
+                        ItemsContract.ItemsColumns.SYNC_GENERATION + " INTEGER NOT NULL DEFAULT 0");
+
+            }
+
+        });
+        sMigrations.put(10, new Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+
+                removeStoredBodies(db);
+
+            }
+
+        });
+
+    }
+
+    private ItemsMigrations() {
+
+    }
+
+    /**
+     * Whether there is an unbroken chain of steps from {@code oldVersion} to {@code newVersion}.
+     */
+    static boolean canMigrate(int oldVersion, int newVersion) {
+
+        for (int version = oldVersion; version < newVersion; version++) {
+
+            if (sMigrations.get(version) == null) {
+
+                return false;
+
+            }
+
+        }
+        return true;
+
+    }
+
+    /**
+     * Run every step from {@code oldVersion} up to {@code newVersion} in order. Runs inside the
+     * upgrade transaction, so a failing step leaves the database at {@code oldVersion}.
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+
+        for (int version = oldVersion; version < newVersion; version++) {
+
+            sMigrations.get(version).migrate(db);
+
+        }
+
+    }
+
+    /**
+     * Version 3 tracks a content hash per article and keeps server ids unique. Articles from
+     * version 2 have no hash yet and are rewritten once by the next sync. That version stored
+     * whatever the feed sent, so duplicate server ids are reduced to their first row first.
+     */
+    private static void addContentHash(SQLiteDatabase db) {
+
+        db.execSQL("ALTER TABLE " + Tables.ITEMS + " ADD COLUMN " +
+                ItemsContract.ItemsColumns.CONTENT_HASH + " TEXT");
+        db.execSQL("DELETE FROM " + Tables.ITEMS + " WHERE " + ItemsContract.ItemsColumns._ID +
+                " NOT IN (SELECT MIN(" + ItemsContract.ItemsColumns._ID + ") FROM " +
+                Tables.ITEMS + " GROUP BY " + ItemsContract.ItemsColumns.SERVER_ID + ")");
+        db.execSQL("CREATE UNIQUE INDEX " + Tables.ITEMS + "_" +
+                ItemsContract.ItemsColumns.SERVER_ID + " ON " + Tables.ITEMS + " (" +
+                ItemsContract.ItemsColumns.SERVER_ID + ")");
+
+    }
+
+    /**
+     * Version 4 stores {@link ItemsContract.ItemsColumns#PUBLISHED_DATE} as epoch millis instead
+     * of the feed's local-time string. SQLite cannot change a column type in place, so the table
+     * is rebuilt and the dates converted on the way.
+     */
+    private static void migratePublishedDateToMillis(SQLiteDatabase db) {
+
+        final String oldTable = Tables.ITEMS + "_v3";
+        final String columns = ItemsContract.ItemsColumns._ID + "," +
+                ItemsContract.ItemsColumns.SERVER_ID + "," + ItemsContract.ItemsColumns.TITLE +
+                "," + ItemsContract.ItemsColumns.AUTHOR + "," + ItemsContract.ItemsColumns.BODY +
+                "," + ItemsContract.ItemsColumns.THUMB_URL + "," +
+                ItemsContract.ItemsColumns.PHOTO_URL + "," +
+                ItemsContract.ItemsColumns.ASPECT_RATIO + "," +
+                ItemsContract.ItemsColumns.CONTENT_HASH;
+
+        db.execSQL("DROP INDEX IF EXISTS " + Tables.ITEMS + "_" +
+                ItemsContract.ItemsColumns.SERVER_ID);
+        db.execSQL("ALTER TABLE " + Tables.ITEMS + " RENAME TO " + oldTable);
+        // The table as of version 4, later versions alter it further
+        db.execSQL("CREATE TABLE " + Tables.ITEMS + " (" + ItemsContract.ItemsColumns._ID +
+                " INTEGER PRIMARY KEY AUTOINCREMENT," + ItemsContract.ItemsColumns.SERVER_ID +
+                " TEXT," + ItemsContract.ItemsColumns.TITLE + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.AUTHOR + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.BODY + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.THUMB_URL + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.PHOTO_URL + " TEXT NOT NULL," +
+                ItemsContract.ItemsColumns.ASPECT_RATIO + " REAL NOT NULL DEFAULT 1.5," +
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + " INTEGER NOT NULL DEFAULT 0," +
+                ItemsContract.ItemsColumns.CONTENT_HASH + " TEXT" + ")");
+        db.execSQL("CREATE UNIQUE INDEX " + Tables.ITEMS + "_" +
+                ItemsContract.ItemsColumns.SERVER_ID + " ON " + Tables.ITEMS + " (" +
+                ItemsContract.ItemsColumns.SERVER_ID + ")");
+        db.execSQL("CREATE INDEX " + Tables.ITEMS + "_" +
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + " ON " + Tables.ITEMS + " (" +
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + "," + ItemsContract.ItemsColumns._ID +
+                ")");
+        // 'utc' reads the stored time as local time, matching how the app used to parse it
+        db.execSQL("INSERT INTO " + Tables.ITEMS + " (" + columns + "," +
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + ") SELECT " + columns +
+                ", COALESCE(CAST(strftime('%s', substr(" +
+                ItemsContract.ItemsColumns.PUBLISHED_DATE + ", 1, 19), 'utc') AS INTEGER)," +
+                " CAST(strftime('%s', 'now') AS INTEGER)) * 1000 FROM " + oldTable);
+        db.execSQL("DROP TABLE " + oldTable);
+
+    }
+
+    /**
+     * Version 5 keeps each article's body split into paragraphs. Articles stored before that
+     * are split once here rather than waiting for their next change on the server.
+     */
+    private static void splitStoredBodies(SQLiteDatabase db) {
+
+        final Cursor cursor = db.query(Tables.ITEMS, new String[]{
+                ItemsContract.ItemsColumns._ID, ItemsContract.ItemsColumns.BODY}, null, null,
+                null, null, null);
+        final ParagraphWriter paragraphs = new ParagraphWriter(db);
+        try {
+
+            while (cursor.moveToNext()) {
+
+                paragraphs.write(cursor.getLong(0), cursor.getString(1));
+
+            }
+
+        }
+        finally {
+
+            paragraphs.close();
+            cursor.close();
+
+        }
+
+    }
+
+    /**
+     * Version 7 keeps a short excerpt next to each body, computed here for stored articles.
+     */
+    private static void excerptStoredBodies(SQLiteDatabase db) {
+
+        final Cursor cursor = db.query(Tables.ITEMS, new String[]{
+                ItemsContract.ItemsColumns._ID, ItemsContract.ItemsColumns.BODY}, null, null,
+                null, null, null);
+        final SQLiteStatement update = db.compileStatement("UPDATE " + Tables.ITEMS + " SET " +
+                ItemsContract.ItemsColumns.EXCERPT + "=? WHERE " +
+                ItemsContract.ItemsColumns._ID + "=?");
+        try {
+
+            while (cursor.moveToNext()) {
+
+                update.bindString(1, ParagraphTokenizer.excerpt(cursor.getString(1),
+                        UpdaterService.EXCERPT_LENGTH));
+                update.bindLong(2, cursor.getLong(0));
+                update.executeUpdateDelete();
+
+            }
+
+        }
+        finally {
+
+            update.close();
+            cursor.close();
+
+        }
+
+    }
+
+    /**
+     * Version 8 keeps longer paragraphs compressed. Paragraphs stored as text before that are
+     * compressed here, the ones that would not shrink are left alone.
+     */
+    private static void compressStoredParagraphs(SQLiteDatabase db) {
+
+        // Not filtered on the type, rows changing type would shift the cursor's later windows
+        final Cursor cursor = db.query(Tables.PARAGRAPHS, new String[]{
+                ItemsContract.ParagraphsColumns._ID, ItemsContract.ParagraphsColumns.TEXT}, null,
+                null, null, null, null);
+        final SQLiteStatement update = db.compileStatement("UPDATE " + Tables.PARAGRAPHS +
+                " SET " + ItemsContract.ParagraphsColumns.TEXT + "=? WHERE " +
+                ItemsContract.ParagraphsColumns._ID + "=?");
+        final ParagraphCodec codec = new ParagraphCodec();
+        try {
+
+            while (cursor.moveToNext()) {
+
+                if (cursor.getType(1) != Cursor.FIELD_TYPE_STRING) {
+
+                    continue;
+
+                }
+                final byte[] compressed = codec.compress(cursor.getString(1));
+                if (compressed != null) {
+
+                    update.bindBlob(1, compressed);
+                    update.bindLong(2, cursor.getLong(0));
+                    update.executeUpdateDelete();
+
+                }
+
+            }
+
+        }
+        finally {
+
+            codec.release();
+            update.close();
+            cursor.close();
+
+        }
+
+    }
+
+    /**
+     * The search index and its triggers as of version 6, which read the body from the items
+     * table. Version 11 drops the triggers.
+     */
+    private static void createVersion6SearchIndex(SQLiteDatabase db) {
+
+        final String indexed = ItemsContract.ItemsColumns.TITLE + ", " +
+                ItemsContract.ItemsColumns.AUTHOR + ", " + ItemsContract.ItemsColumns.BODY;
+        final String newValues = "new." + ItemsContract.ItemsColumns._ID + ", new." +
+                ItemsContract.ItemsColumns.TITLE + ", new." + ItemsContract.ItemsColumns.AUTHOR +
+                ", new." + ItemsContract.ItemsColumns.BODY;
+        final String deleteOld = "DELETE FROM " + Tables.ITEMS_SEARCH + " WHERE docid=old." +
+                ItemsContract.ItemsColumns._ID + ";";
+        final String insertNew = "INSERT INTO " + Tables.ITEMS_SEARCH + " (docid, " + indexed +
+                ") VALUES (" + newValues + ");";
+
+        db.execSQL("CREATE VIRTUAL TABLE " + Tables.ITEMS_SEARCH + " USING fts4(content=\"" +
+                Tables.ITEMS + "\", " + indexed + ", tokenize=unicode61, prefix=\"3\")");
+        db.execSQL("CREATE TRIGGER " + Tables.ITEMS_SEARCH + "_before_update BEFORE UPDATE OF " +
+                indexed + " ON " + Tables.ITEMS + " BEGIN " + deleteOld + " END");
+        db.execSQL("CREATE TRIGGER " + Tables.ITEMS_SEARCH + "_before_delete BEFORE DELETE ON " +
+                Tables.ITEMS + " BEGIN " + deleteOld + " END");
+        db.execSQL("CREATE TRIGGER " + Tables.ITEMS_SEARCH + "_after_update AFTER UPDATE OF " +
+                indexed + " ON " + Tables.ITEMS + " BEGIN " + insertNew + " END");
+        db.execSQL("CREATE TRIGGER " + Tables.ITEMS_SEARCH + "_after_insert AFTER INSERT ON " +
+                Tables.ITEMS + " BEGIN " + insertNew + " END");
+
+    }
+
+    /**
+     * Version 11 keeps the body as compressed paragraphs only. The search index is rebuilt from
+     * the paragraphs, the text {@link SearchIndexWriter} gives it from now on, and then the
+     * bodies in the items table are emptied. The freed pages are reused by later writes.
+     */
+    private static void removeStoredBodies(SQLiteDatabase db) {
+
+        for (String trigger : new String[]{"before_update", "before_delete", "after_update",
+                                           "after_insert"}) {
+
+            db.execSQL("DROP TRIGGER IF EXISTS " + Tables.ITEMS_SEARCH + "_" + trigger);
+
+        }
+
+        final Cursor cursor = db.query(Tables.ITEMS, new String[]{
+                ItemsContract.ItemsColumns._ID}, null, null, null, null, null);
+        final SQLiteStatement update = db.compileStatement("UPDATE " + Tables.ITEMS + " SET " +
+                ItemsContract.ItemsColumns.BODY + "=? WHERE " +
+                ItemsContract.ItemsColumns._ID + "=?");
+        try {
+
+            while (cursor.moveToNext()) {
+
+                final long id = cursor.getLong(0);
+                update.bindString(1, SearchIndexWriter.readBody(db, id));
+                update.bindLong(2, id);
+                update.executeUpdateDelete();
+
+            }
+
+        }
+        finally {
+
+            update.close();
+            cursor.close();
+
+        }
+        db.execSQL("INSERT INTO " + Tables.ITEMS_SEARCH + "(" + Tables.ITEMS_SEARCH +
+                ") VALUES ('rebuild')");
+        db.execSQL("UPDATE " + Tables.ITEMS + " SET " + ItemsContract.ItemsColumns.BODY + "=''");
+
+    }
+
+}
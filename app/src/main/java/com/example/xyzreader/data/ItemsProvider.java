@@ -7,27 +7,81 @@ import android.content.ContentValues;
 import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 public class ItemsProvider extends ContentProvider {
 
+    // Notifications arriving within this window are sent together
+    private static final long NOTIFY_DELAY_MILLIS = 100;
+
     private SQLiteOpenHelper mOpenHelper;
+    // URIs changed by the batch running on the current thread, null outside of a batch
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<>();
+    // Committed changes not yet notified, guarded by itself along with the two fields below
+    private final Set<Uri> mPendingChanges = new HashSet<>();
+    private int mHoldCount;
+    private boolean mNotifyScheduled;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mNotifyRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+
+            sendPendingChanges();
+
+        }
+
+    };
 
     interface Tables {
 
         String ITEMS = "items";
+        String PARAGRAPHS = "paragraphs";
+        String ITEMS_SEARCH = "items_search";
 
     }
 
     private static final int ITEMS = 0;
     private static final int ITEMS__ID = 1;
+    private static final int ITEMS__ID__PARAGRAPHS = 2;
+    private static final int ITEMS_SEARCH = 3;
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    private static final int NO_LIMIT = -1;
     private static final UriMatcher sUriMatcher = buildUriMatcher();
+    // Plain column names only, a URI must not be able to inject SQL
+    private static final Pattern COLUMN_LIST = Pattern.compile("\\w+(\\s*,\\s*\\w+)*");
+    // Builders keep their buffers across calls, each thread resets and reuses its own
+    private static final ThreadLocal<SelectionBuilder> sSelectionBuilders =
+            new ThreadLocal<SelectionBuilder>() {
+
+                @Override
+                protected SelectionBuilder initialValue() {
+
+                    return new SelectionBuilder();
+
+                }
+
+            };
 
     private static UriMatcher buildUriMatcher() {
 
@@ -35,6 +89,8 @@ public class ItemsProvider extends ContentProvider {
         final String authority = ItemsContract.CONTENT_AUTHORITY;
         matcher.addURI(authority, "items", ITEMS);
         matcher.addURI(authority, "items/#", ITEMS__ID);
+        matcher.addURI(authority, "items/#/paragraphs", ITEMS__ID__PARAGRAPHS);
+        matcher.addURI(authority, "items/search", ITEMS_SEARCH);
         return matcher;
 
     }
@@ -47,6 +103,16 @@ public class ItemsProvider extends ContentProvider {
 
     }
 
+    /**
+     * Close the database. Only tests that start the provider themselves call this.
+     */
+    @Override
+    public void shutdown() {
+
+        mOpenHelper.close();
+
+    }
+
     @Override
     public String getType(@NonNull Uri uri) {
 
@@ -59,6 +125,12 @@ public class ItemsProvider extends ContentProvider {
             case ITEMS__ID:
                 return ItemsContract.Items.CONTENT_ITEM_TYPE;
 
+            case ITEMS__ID__PARAGRAPHS:
+                return ItemsContract.Paragraphs.CONTENT_TYPE;
+
+            case ITEMS_SEARCH:
+                return ItemsContract.Search.CONTENT_TYPE;
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
 
@@ -71,8 +143,46 @@ public class ItemsProvider extends ContentProvider {
                         String[] selectionArgs, String sortOrder) {
 
         final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-        final SelectionBuilder builder = buildSelection(uri);
-        Cursor cursor = builder.where(selection, selectionArgs).query(db, projection, sortOrder);
+        final int match = sUriMatcher.match(uri);
+        Cursor cursor;
+        if (match == ITEMS_SEARCH) {
+
+            cursor = ItemsSearch.query(db,
+                    uri.getQueryParameter(ItemsContract.Search.QUERY_PARAMETER_QUERY),
+                    getLimit(uri, DEFAULT_SEARCH_LIMIT));
+
+        }
+        else {
+
+            final SelectionBuilder builder = buildSelection(uri);
+            builder.where(selection, selectionArgs);
+            String orderBy = sortOrder;
+            final String before =
+                    uri.getQueryParameter(ItemsContract.Items.QUERY_PARAMETER_BEFORE);
+            if (before != null) {
+
+                whereBefore(builder, uri, before);
+                orderBy = ItemsContract.Items.DEFAULT_SORT;
+
+            }
+            final String from =
+                    uri.getQueryParameter(ItemsContract.Paragraphs.QUERY_PARAMETER_FROM);
+            if (from != null && match == ITEMS__ID__PARAGRAPHS) {
+
+                whereFrom(builder, uri, from);
+                orderBy = ItemsContract.Paragraphs.DEFAULT_SORT;
+
+            }
+            final int limit = getLimit(uri, NO_LIMIT);
+            cursor = builder.query(db, projection, getGroupBy(uri), null, orderBy,
+                    limit != NO_LIMIT ? Integer.toString(limit) : null);
+            if (match == ITEMS__ID__PARAGRAPHS) {
+
+                cursor = new ParagraphCursor(cursor);
+
+            }
+
+        }
         if (cursor != null) {
 
             if (getContext() != null) {
@@ -94,12 +204,25 @@ public class ItemsProvider extends ContentProvider {
         switch (match) {
 
             case ITEMS:
-                final long _id = db.insertOrThrow(Tables.ITEMS, null, values);
-                if (getContext() != null) {
+                final long _id;
+                final ParagraphWriter paragraphs = new ParagraphWriter(db);
+                final SearchIndexWriter search = new SearchIndexWriter(db);
+                db.beginTransactionNonExclusive();
+                try {
+
+                    _id = db.insertOrThrow(Tables.ITEMS, null, withoutBody(values));
+                    search.add(_id, writeBody(paragraphs, _id, values));
+                    db.setTransactionSuccessful();
+
+                }
+                finally {
 
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    db.endTransaction();
+                    paragraphs.close();
+                    search.close();
 
                 }
+                notifyChange(uri);
                 return ItemsContract.Items.buildItemUri(_id);
 
             default:
@@ -109,18 +232,124 @@ public class ItemsProvider extends ContentProvider {
 
     }
 
+    /**
+     * Insert all rows inside one transaction through a precompiled {@code INSERT} statement,
+     * notifying observers once after the commit. Rows with the same set of columns share a
+     * statement.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+
+        final int match = sUriMatcher.match(uri);
+        if (match != ITEMS) {
+
+            throw new UnsupportedOperationException("Unknown uri: " + uri);
+
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final Map<Set<String>, InsertStatement> statements = new HashMap<>();
+        final ParagraphWriter paragraphs = new ParagraphWriter(db);
+        final SearchIndexWriter search = new SearchIndexWriter(db);
+        db.beginTransactionNonExclusive();
+        try {
+
+            for (ContentValues row : values) {
+
+                InsertStatement insert = statements.get(row.keySet());
+                if (insert == null) {
+
+                    insert = new InsertStatement(db, Tables.ITEMS, row.keySet());
+                    statements.put(new HashSet<>(row.keySet()), insert);
+
+                }
+                final long _id = insert.execute(withoutBody(row));
+                search.add(_id, writeBody(paragraphs, _id, row));
+
+            }
+            db.setTransactionSuccessful();
+
+        }
+        finally {
+
+            db.endTransaction();
+            paragraphs.close();
+            search.close();
+            for (InsertStatement insert : statements.values()) {
+
+                insert.close();
+
+            }
+
+        }
+
+        if (values.length > 0) {
+
+            notifyChange(uri);
+
+        }
+        return values.length;
+
+    }
+
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String selection,
                       String[] selectionArgs) {
 
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final SelectionBuilder builder = buildSelection(uri);
-        if (getContext() != null) {
+        builder.where(selection, selectionArgs);
+        final int count;
+        if (!isArticles(uri) || !(values.containsKey(ItemsContract.Items.TITLE) ||
+                values.containsKey(ItemsContract.Items.AUTHOR) ||
+                values.containsKey(ItemsContract.Items.BODY))) {
 
-            getContext().getContentResolver().notifyChange(uri, null);
+            count = builder.update(db, values);
 
         }
-        return builder.where(selection, selectionArgs).update(db, values);
+        else {
+
+            // Each article leaves the search index with its old text and comes back with the
+            // new one. A new body also means new paragraphs.
+            final ParagraphWriter paragraphs = new ParagraphWriter(db);
+            final SearchIndexWriter search = new SearchIndexWriter(db);
+            db.beginTransactionNonExclusive();
+            try {
+
+                final long[] ids = queryIds(db, builder);
+                final String[] oldBodies = new String[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+
+                    oldBodies[i] = search.remove(ids[i]);
+
+                }
+                count = builder.update(db, withoutBody(values));
+                for (int i = 0; i < ids.length; i++) {
+
+                    search.add(ids[i], values.containsKey(ItemsContract.Items.BODY)
+                            ? writeBody(paragraphs, ids[i], values) : oldBodies[i]);
+
+                }
+                db.setTransactionSuccessful();
+
+            }
+            finally {
+
+                db.endTransaction();
+                paragraphs.close();
+                search.close();
+
+            }
+
+        }
+        // Marking articles as seen by a sync changes nothing readers show
+        if (count > 0 && !(values.size() == 1 &&
+                values.containsKey(ItemsContract.Items.SYNC_GENERATION))) {
+
+            notifyChange(uri);
+
+        }
+        return count;
 
     }
 
@@ -129,18 +358,341 @@ public class ItemsProvider extends ContentProvider {
 
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final SelectionBuilder builder = buildSelection(uri);
+        builder.where(selection, selectionArgs);
+        final int count;
+        if (!isArticles(uri)) {
+
+            count = builder.delete(db);
+
+        }
+        else {
+
+            // Articles leave the search index while their paragraphs are still there
+            final SearchIndexWriter search = new SearchIndexWriter(db);
+            db.beginTransactionNonExclusive();
+            try {
+
+                for (long id : queryIds(db, builder)) {
+
+                    search.remove(id);
+
+                }
+                count = builder.delete(db);
+                db.setTransactionSuccessful();
+
+            }
+            finally {
+
+                db.endTransaction();
+                search.close();
+
+            }
+
+        }
+        if (count > 0) {
+
+            notifyChange(uri);
+
+        }
+        return count;
+
+    }
+
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+
+        switch (method) {
+
+            case ItemsContract.METHOD_GET_POSITION:
+                final Bundle result = new Bundle();
+                result.putInt(ItemsContract.EXTRA_POSITION,
+                        getPosition(mOpenHelper.getReadableDatabase(), Long.parseLong(arg)));
+                return result;
+
+            case ItemsContract.METHOD_HOLD_NOTIFICATIONS:
+                synchronized (mPendingChanges) {
+
+                    mHoldCount++;
+
+                }
+                return null;
+
+            case ItemsContract.METHOD_RELEASE_NOTIFICATIONS:
+                final boolean released;
+                synchronized (mPendingChanges) {
+
+                    if (mHoldCount == 0) {
+
+                        throw new IllegalStateException("Notifications are not held");
+
+                    }
+                    mHoldCount--;
+                    released = mHoldCount == 0;
+                    scheduleNotify();
+
+                }
+                if (released) {
+
+                    ItemsDatabase.checkpoint(mOpenHelper.getWritableDatabase());
+
+                }
+                return null;
+
+            default:
+                return super.call(method, arg, extras);
+
+        }
+
+    }
+
+    /**
+     * Record that the data behind {@code uri} changed. Inside a batch the change is only kept
+     * until the batch commits, otherwise it is queued for {@link #sendPendingChanges()}.
+     */
+    private void notifyChange(Uri uri) {
+
+        final Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+
+            batchChanges.add(uri);
+
+        }
+        else {
+
+            queueChanges(Collections.singleton(uri));
+
+        }
+
+    }
+
+    private void queueChanges(Collection<Uri> uris) {
+
+        synchronized (mPendingChanges) {
+
+            mPendingChanges.addAll(uris);
+            scheduleNotify();
+
+        }
+
+    }
+
+    // Must hold mPendingChanges
+    private void scheduleNotify() {
+
+        if (mHoldCount == 0 && !mNotifyScheduled && !mPendingChanges.isEmpty()) {
+
+            mNotifyScheduled = true;
+            mHandler.postDelayed(mNotifyRunnable, NOTIFY_DELAY_MILLIS);
+
+        }
+
+    }
+
+    /**
+     * Notify every queued URI once. A change to the whole directory already reaches observers
+     * of single articles, so it replaces them. Changes to several articles collapse into it too,
+     * list screens then reload once instead of once per article.
+     */
+    private void sendPendingChanges() {
+
+        final Uri dirUri = ItemsContract.Items.buildDirUri();
+        final List<Uri> uris;
+        synchronized (mPendingChanges) {
+
+            mNotifyScheduled = false;
+            if (mHoldCount > 0) {
+
+                return;
+
+            }
+            uris = mPendingChanges.size() > 1 || mPendingChanges.contains(dirUri)
+                    ? Collections.singletonList(dirUri) : new ArrayList<>(mPendingChanges);
+            mPendingChanges.clear();
+
+        }
         if (getContext() != null) {
 
-            getContext().getContentResolver().notifyChange(uri, null);
+            for (Uri uri : uris) {
+
+                getContext().getContentResolver().notifyChange(uri, null);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Count the articles ahead of the given one in default sort order. Both lookups are served
+     * by the (published_date, _id) index, so no rows are read.
+     */
+    private static int getPosition(SQLiteDatabase db, long _id) {
+
+        final String id = Long.toString(_id);
+        final Cursor item = db.query(Tables.ITEMS,
+                new String[]{ItemsContract.Items.PUBLISHED_DATE},
+                ItemsContract.Items._ID + "=?", new String[]{id}, null, null, null);
+        final String publishedDate;
+        try {
+
+            if (!item.moveToFirst()) {
+
+                return -1;
+
+            }
+            publishedDate = item.getString(0);
+
+        }
+        finally {
+
+            item.close();
+
+        }
+        return (int) DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM " + Tables.ITEMS + " WHERE " +
+                        ItemsContract.Items.PUBLISHED_DATE + ">? OR (" +
+                        ItemsContract.Items.PUBLISHED_DATE + "=? AND " +
+                        ItemsContract.Items._ID + ">?)",
+                new String[]{publishedDate, publishedDate, id});
+
+    }
+
+    private static String getGroupBy(Uri uri) {
+
+        final String groupBy = uri.getQueryParameter(ItemsContract.QUERY_PARAMETER_GROUP_BY);
+        if (groupBy != null && !COLUMN_LIST.matcher(groupBy).matches()) {
+
+            throw new IllegalArgumentException("Invalid group_by in uri: " + uri);
+
+        }
+        return groupBy;
+
+    }
+
+    private static int getLimit(Uri uri, int defaultLimit) {
+
+        final String limit = uri.getQueryParameter(ItemsContract.QUERY_PARAMETER_LIMIT);
+        try {
+
+            return limit != null ? Integer.parseInt(limit) : defaultLimit;
+
+        }
+        catch (NumberFormatException e) {
+
+            throw new IllegalArgumentException("Invalid limit in uri: " + uri, e);
+
+        }
+
+    }
+
+    /**
+     * Restrict to the articles after {@code before} in default sort order. The first term bounds
+     * a range on the (published_date, _id) index, which is what keeps later pages as fast as the
+     * first one. The second alone would make SQLite walk every newer row to reach the key.
+     */
+    private static void whereBefore(SelectionBuilder builder, Uri uri, String before) {
+
+        final int comma = before.indexOf(',');
+        final String publishedDate;
+        final String _id;
+        try {
+
+            publishedDate = Long.toString(Long.parseLong(before.substring(0, comma)));
+            _id = Long.toString(Long.parseLong(before.substring(comma + 1)));
+
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException e) {
+
+            throw new IllegalArgumentException("Invalid page key in uri: " + uri, e);
+
+        }
+        builder.where(ItemsContract.Items.PUBLISHED_DATE + "<=?", publishedDate)
+               .where(ItemsContract.Items.PUBLISHED_DATE + "<? OR " +
+                       ItemsContract.Items._ID + "<?", publishedDate, _id);
+
+    }
+
+    /**
+     * Restrict to the paragraphs from position {@code from} on, a range on the
+     * (item_id, position) index.
+     */
+    private static void whereFrom(SelectionBuilder builder, Uri uri, String from) {
+
+        final String position;
+        try {
+
+            position = Integer.toString(Integer.parseInt(from));
+
+        }
+        catch (NumberFormatException e) {
+
+            throw new IllegalArgumentException("Invalid paragraph position in uri: " + uri, e);
+
+        }
+        builder.where(ItemsContract.Paragraphs.POSITION + ">=?", position);
+
+    }
+
+    private static boolean isArticles(Uri uri) {
+
+        final int match = sUriMatcher.match(uri);
+        return match == ITEMS || match == ITEMS__ID;
+
+    }
+
+    /**
+     * The values to store in the items row: the body is kept as paragraphs only, the row gets
+     * an empty one.
+     */
+    private static ContentValues withoutBody(ContentValues values) {
+
+        if (values.getAsString(ItemsContract.Items.BODY) == null) {
+
+            return values;
+
+        }
+        final ContentValues row = new ContentValues(values);
+        row.put(ItemsContract.Items.BODY, "");
+        return row;
+
+    }
+
+    /**
+     * Store the paragraphs of the body in {@code values}, if any, and return the text to index.
+     */
+    private static String writeBody(ParagraphWriter paragraphs, long itemId,
+                                    ContentValues values) {
+
+        final String body = values.getAsString(ItemsContract.Items.BODY);
+        return (body != null) ? paragraphs.write(itemId, body) : "";
+
+    }
+
+    private static long[] queryIds(SQLiteDatabase db, SelectionBuilder builder) {
+
+        final Cursor cursor = builder.query(db, new String[]{BaseColumns._ID}, null);
+        try {
+
+            final long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+
+                ids[i] = cursor.getLong(0);
+
+            }
+            return ids;
+
+        }
+        finally {
+
+            cursor.close();
 
         }
-        return builder.where(selection, selectionArgs).delete(db);
 
     }
 
     private SelectionBuilder buildSelection(Uri uri) {
 
-        final SelectionBuilder builder = new SelectionBuilder();
+        final SelectionBuilder builder = sSelectionBuilders.get().reset();
         final int match = sUriMatcher.match(uri);
         return buildSelection(uri, match, builder);
 
@@ -152,11 +704,17 @@ public class ItemsProvider extends ContentProvider {
         switch (match) {
 
             case ITEMS:
-                return builder.table(Tables.ITEMS);
+                return mapParagraphCount(builder.table(Tables.ITEMS));
 
             case ITEMS__ID:
                 final String _id = paths.get(1);
-                return builder.table(Tables.ITEMS).where(ItemsContract.Items._ID + "=?", _id);
+                return mapParagraphCount(builder.table(Tables.ITEMS))
+                        .where(ItemsContract.Items._ID + "=?", _id);
+
+            case ITEMS__ID__PARAGRAPHS:
+                final String itemId = paths.get(1);
+                return builder.table(Tables.PARAGRAPHS)
+                              .where(ItemsContract.Paragraphs.ITEM_ID + "=?", itemId);
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -165,10 +723,19 @@ public class ItemsProvider extends ContentProvider {
 
     }
 
+    private static SelectionBuilder mapParagraphCount(SelectionBuilder builder) {
+
+        // Counted on the (item_id, position) index without touching the paragraph text
+        return builder.map(ItemsContract.Items.PARAGRAPH_COUNT, "(SELECT COUNT(*) FROM " +
+                Tables.PARAGRAPHS + " WHERE " + ItemsContract.ParagraphsColumns.ITEM_ID + "=" +
+                Tables.ITEMS + "." + ItemsContract.ItemsColumns._ID + ")");
+
+    }
+
     /**
      * Apply the given set of {@link ContentProviderOperation}, executing inside
      * a {@link SQLiteDatabase} transaction. All changes will be rolled back if
-     * any single one fails.
+     * any single one fails. Observers are notified once the transaction commits.
      */
     @NonNull
     public ContentProviderResult[] applyBatch(
@@ -176,7 +743,14 @@ public class ItemsProvider extends ContentProvider {
             throws OperationApplicationException {
 
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        db.beginTransaction();
+        final boolean outermost = mBatchChanges.get() == null;
+        if (outermost) {
+
+            mBatchChanges.set(new HashSet<Uri>());
+
+        }
+        boolean successful = false;
+        db.beginTransactionNonExclusive();
         try {
 
             final int numOperations = operations.size();
@@ -187,12 +761,79 @@ public class ItemsProvider extends ContentProvider {
 
             }
             db.setTransactionSuccessful();
+            successful = true;
             return results;
 
         }
         finally {
 
             db.endTransaction();
+            if (outermost) {
+
+                // Changes of a rolled back batch never happened
+                final Set<Uri> changes = mBatchChanges.get();
+                mBatchChanges.remove();
+                if (successful) {
+
+                    queueChanges(changes);
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * A compiled {@code INSERT} for one fixed set of columns.
+     */
+    private static class InsertStatement {
+
+        private final String[] mColumns;
+        private final SQLiteStatement mStatement;
+
+        InsertStatement(SQLiteDatabase db, String table, Set<String> columns) {
+
+            mColumns = columns.toArray(new String[columns.size()]);
+            final StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+            for (int i = 0; i < mColumns.length; i++) {
+
+                sql.append(i > 0 ? "," : "").append(mColumns[i]);
+
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < mColumns.length; i++) {
+
+                sql.append(i > 0 ? ",?" : "?");
+
+            }
+            sql.append(")");
+            mStatement = db.compileStatement(sql.toString());
+
+        }
+
+        long execute(ContentValues row) {
+
+            mStatement.clearBindings();
+            for (int i = 0; i < mColumns.length; i++) {
+
+                DatabaseUtils.bindObjectToProgram(mStatement, i + 1, row.get(mColumns[i]));
+
+            }
+            final long _id = mStatement.executeInsert();
+            if (_id == -1) {
+
+                throw new SQLException("Failed to insert row " + row);
+
+            }
+            return _id;
+
+        }
+
+        void close() {
+
+            mStatement.close();
 
         }
 
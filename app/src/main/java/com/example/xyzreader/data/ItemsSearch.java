@@ -0,0 +1,267 @@
+package com.example.xyzreader.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.v4.util.LongSparseArray;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import static com.example.xyzreader.data.ItemsProvider.Tables;
+
+/**
+ * Full-text search over the {@link Tables#ITEMS_SEARCH} index. Matches are ranked in two steps:
+ * only the docid and {@code matchinfo} of up to {@link #MAX_RANKED} of the newest matches are
+ * read and scored, then snippets are built for the best {@code limit} of them alone. A common
+ * word therefore costs about as much as a rare one, but older matches beyond that many are
+ * not found. The index does not hold the body text, so an article matching in its body alone
+ * gets its excerpt as the snippet.
+ */
+class ItemsSearch {
+
+    static final String[] COLUMNS = {ItemsContract.Search._ID, ItemsContract.Search.TITLE,
+                                     ItemsContract.Search.AUTHOR, ItemsContract.Search.SNIPPET,
+                                     ItemsContract.Search.RANK,};
+
+    // Relative weight of a hit in title, author and body
+    private static final double[] COLUMN_WEIGHTS = {3.0, 2.0, 1.0};
+    private static final int SNIPPET_TOKENS = 12;
+    private static final String HIGHLIGHT_START = "<b>";
+    private static final int MAX_RANKED = 1000;
+    private static final String RANK_SQL = "SELECT docid, matchinfo(" + Tables.ITEMS_SEARCH +
+            ", 'pcx') FROM " + Tables.ITEMS_SEARCH + " WHERE " + Tables.ITEMS_SEARCH +
+            " MATCH ? ORDER BY docid DESC LIMIT " + MAX_RANKED;
+    // Matches whose snippets are built per query. The index runs the MATCH once and the ids
+    // only filter its rows. Unused slots are bound to -1, so the SQL never changes and
+    // compiles once.
+    private static final int SNIPPET_BATCH = 50;
+    private static final String SNIPPET_SQL = "SELECT docid, " + Tables.ITEMS_SEARCH + "." +
+            ItemsContract.Items.TITLE + ", " + Tables.ITEMS_SEARCH + "." +
+            ItemsContract.Items.AUTHOR + ", snippet(" + Tables.ITEMS_SEARCH +
+            ", '" + HIGHLIGHT_START + "', '</b>', '…', -1, " + SNIPPET_TOKENS + ") FROM " +
+            Tables.ITEMS_SEARCH + " WHERE " + Tables.ITEMS_SEARCH + " MATCH ? AND docid IN (" +
+            SelectionBuilder.placeholders(SNIPPET_BATCH) + ")";
+    private static final String EXCERPT_SQL = "SELECT " + ItemsContract.Items._ID + ", " +
+            ItemsContract.Items.EXCERPT + " FROM " + Tables.ITEMS + " WHERE " +
+            ItemsContract.Items._ID + " IN (" + SelectionBuilder.placeholders(SNIPPET_BATCH) +
+            ")";
+
+    private ItemsSearch() {
+
+    }
+
+    static Cursor query(SQLiteDatabase db, String query, int limit) {
+
+        final MatrixCursor result = new MatrixCursor(COLUMNS);
+        final String match = toMatchExpression(query);
+        if (match == null || limit <= 0) {
+
+            return result;
+
+        }
+
+        final Match[] matches = rank(db, match);
+        final int count = Math.min(limit, matches.length);
+        final String[] ids = new String[SNIPPET_BATCH];
+        final String[] args = new String[1 + SNIPPET_BATCH];
+        args[0] = match;
+        for (int start = 0; start < count; start += SNIPPET_BATCH) {
+
+            final int end = Math.min(count, start + SNIPPET_BATCH);
+            for (int i = start; i < start + SNIPPET_BATCH; i++) {
+
+                ids[i - start] = Long.toString(i < end ? matches[i].id : -1);
+
+            }
+            System.arraycopy(ids, 0, args, 1, SNIPPET_BATCH);
+            // Rows come back in docid order, they are put back in rank order here
+            final LongSparseArray<Object[]> rows = new LongSparseArray<>(end - start);
+            boolean bodyMatches = false;
+            final Cursor cursor = db.rawQuery(SNIPPET_SQL, args);
+            try {
+
+                while (cursor.moveToNext()) {
+
+                    final String snippet = cursor.getString(3);
+                    bodyMatches |= snippet == null || !snippet.contains(HIGHLIGHT_START);
+                    rows.put(cursor.getLong(0), new Object[]{cursor.getLong(0),
+                                                             cursor.getString(1),
+                                                             cursor.getString(2), snippet,
+                                                             null});
+
+                }
+
+            }
+            finally {
+
+                cursor.close();
+
+            }
+            final LongSparseArray<String> excerpts = bodyMatches ? queryExcerpts(db, ids) : null;
+            for (int i = start; i < end; i++) {
+
+                final Object[] row = rows.get(matches[i].id);
+                if (row != null) {
+
+                    final String snippet = (String) row[3];
+                    if (snippet == null || !snippet.contains(HIGHLIGHT_START)) {
+
+                        row[3] = excerpts.get(matches[i].id);
+
+                    }
+                    row[4] = matches[i].rank;
+                    result.addRow(row);
+
+                }
+
+            }
+
+        }
+        return result;
+
+    }
+
+    private static LongSparseArray<String> queryExcerpts(SQLiteDatabase db, String[] ids) {
+
+        final LongSparseArray<String> excerpts = new LongSparseArray<>(ids.length);
+        final Cursor cursor = db.rawQuery(EXCERPT_SQL, ids);
+        try {
+
+            while (cursor.moveToNext()) {
+
+                excerpts.put(cursor.getLong(0), cursor.getString(1));
+
+            }
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+        return excerpts;
+
+    }
+
+    /**
+     * Score the newest {@link #MAX_RANKED} matches and return them best first.
+     */
+    private static Match[] rank(SQLiteDatabase db, String match) {
+
+        final Cursor cursor = db.rawQuery(RANK_SQL, new String[]{match});
+        try {
+
+            final Match[] matches = new Match[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+
+                matches[i] = new Match(cursor.getLong(0), score(cursor.getBlob(1)));
+
+            }
+            Arrays.sort(matches, new Comparator<Match>() {
+
+                @Override
+                public int compare(Match a, Match b) {
+
+                    return Double.compare(b.rank, a.rank);
+
+                }
+
+            });
+            return matches;
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+    /**
+     * Weighted sum, over every phrase and column, of this row's share of all hits. This is the
+     * ranking function suggested by the SQLite FTS documentation for {@code matchinfo 'pcx'}.
+     */
+    private static double score(byte[] matchInfo) {
+
+        final IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder())
+                                         .asIntBuffer();
+        final int phrases = info.get(0);
+        final int columns = info.get(1);
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+
+            for (int column = 0; column < columns; column++) {
+
+                final int offset = 2 + (phrase * columns + column) * 3;
+                final int hitsInRow = info.get(offset);
+                final int hitsInAllRows = info.get(offset + 1);
+                if (hitsInRow > 0) {
+
+                    score += COLUMN_WEIGHTS[column] * hitsInRow / hitsInAllRows;
+
+                }
+
+            }
+
+        }
+        return score;
+
+    }
+
+    /**
+     * Turn free text into an FTS expression matching every word, the last one as a prefix so
+     * that results follow the user as they type. Returns {@code null} if there is no word.
+     */
+    static String toMatchExpression(String query) {
+
+        if (query == null) {
+
+            return null;
+
+        }
+        final StringBuilder match = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+
+            final boolean wordChar = i < query.length() &&
+                    Character.isLetterOrDigit(query.charAt(i));
+            if (wordChar && start < 0) {
+
+                start = i;
+
+            }
+            else if (!wordChar && start >= 0) {
+
+                // Lower case so that words like OR are not read as operators
+                match.append(match.length() > 0 ? " " : "")
+                     .append(query.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+
+            }
+
+        }
+        return match.length() > 0 ? match.append('*').toString() : null;
+
+    }
+
+    private static class Match {
+
+        final long id;
+        final double rank;
+
+        Match(long id, double rank) {
+
+            this.id = id;
+            this.rank = rank;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.example.xyzreader.data;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of stored paragraph text. Paragraphs long enough to gain from it are kept as raw
+ * deflate of their UTF-8 bytes in a BLOB, shorter ones stay plain TEXT, so readers tell the two
+ * apart by the column type. One codec reuses its native deflater and inflater and must be
+ * released; it is not thread safe.
+ */
+class ParagraphCodec {
+
+    // Below this many characters the deflate overhead eats most of the gain
+    static final int MIN_COMPRESSED_LENGTH = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Deflater mDeflater;
+    private Inflater mInflater;
+    private final byte[] mBuffer = new byte[4096];
+    private final ByteArrayOutputStream mOutput = new ByteArrayOutputStream();
+
+    /**
+     * Return the compressed form of {@code text}, or {@code null} if it is better stored as is.
+     */
+    byte[] compress(String text) {
+
+        if (text.length() < MIN_COMPRESSED_LENGTH) {
+
+            return null;
+
+        }
+        if (mDeflater == null) {
+
+            mDeflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+
+        }
+        final byte[] plain = text.getBytes(UTF_8);
+        mDeflater.reset();
+        mDeflater.setInput(plain);
+        mDeflater.finish();
+        mOutput.reset();
+        while (!mDeflater.finished()) {
+
+            mOutput.write(mBuffer, 0, mDeflater.deflate(mBuffer));
+
+        }
+        return mOutput.size() < plain.length ? mOutput.toByteArray() : null;
+
+    }
+
+    String decompress(byte[] compressed) {
+
+        if (mInflater == null) {
+
+            mInflater = new Inflater(true);
+
+        }
+        mInflater.reset();
+        mInflater.setInput(compressed);
+        mOutput.reset();
+        boolean padded = false;
+        try {
+
+            while (!mInflater.finished()) {
+
+                final int count = mInflater.inflate(mBuffer);
+                if (count == 0 && mInflater.needsInput()) {
+
+                    if (padded) {
+
+                        throw new DataFormatException("Truncated input");
+
+                    }
+                    // Raw deflate may need a padding byte to see the end of the stream
+                    mInflater.setInput(new byte[1]);
+                    padded = true;
+
+                }
+                mOutput.write(mBuffer, 0, count);
+
+            }
+
+        }
+        catch (DataFormatException e) {
+
+            throw new IllegalStateException("Corrupt paragraph text", e);
+
+        }
+        return new String(mOutput.toByteArray(), UTF_8);
+
+    }
+
+    void release() {
+
+        if (mDeflater != null) {
+
+            mDeflater.end();
+
+        }
+        if (mInflater != null) {
+
+            mInflater.end();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.example.xyzreader.data;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * Presents the paragraphs table with its text always as a string. Compressed paragraphs are
+ * only inflated when their text is read, so moving over rows or reading other columns costs
+ * nothing extra.
+ */
+class ParagraphCursor extends CursorWrapper {
+
+    private final int mTextColumn;
+    private final ParagraphCodec mCodec = new ParagraphCodec();
+
+    ParagraphCursor(Cursor cursor) {
+
+        super(cursor);
+        mTextColumn = cursor.getColumnIndex(ItemsContract.ParagraphsColumns.TEXT);
+
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+
+        if (columnIndex == mTextColumn && super.getType(columnIndex) == FIELD_TYPE_BLOB) {
+
+            return FIELD_TYPE_STRING;
+
+        }
+        return super.getType(columnIndex);
+
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+
+        if (columnIndex == mTextColumn && super.getType(columnIndex) == FIELD_TYPE_BLOB) {
+
+            return mCodec.decompress(super.getBlob(columnIndex));
+
+        }
+        return super.getString(columnIndex);
+
+    }
+
+    @Override
+    public void close() {
+
+        super.close();
+        mCodec.release();
+
+    }
+
+}
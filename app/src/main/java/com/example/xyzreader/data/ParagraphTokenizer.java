@@ -0,0 +1,135 @@
+package com.example.xyzreader.data;
+
+/**
+ * Splits an article body into display paragraphs in a single pass over the text.
+ * <p>
+ * A blank line ends a paragraph. A line break in front of an indented line is kept, any other
+ * {@code \r\n} is joined into a space. Empty paragraphs are dropped. Only the returned paragraph
+ * strings are allocated, the working buffer is reused between calls.
+ */
+class ParagraphTokenizer {
+
+    private static final int END = -1;
+    private static final String INDENT = "    ";
+
+    private final String mBody;
+    private final StringBuilder mParagraph = new StringBuilder();
+    private int mPosition;
+    private int mPending = END;
+
+    /**
+     * Return the opening paragraphs of a body joined into one line and cut at a word boundary
+     * to at most {@code maxLength} characters, ellipsis included.
+     */
+    static String excerpt(String body, int maxLength) {
+
+        final ParagraphTokenizer tokenizer = new ParagraphTokenizer(body);
+        final StringBuilder excerpt = new StringBuilder(maxLength + 1);
+        String paragraph;
+        while (excerpt.length() <= maxLength && (paragraph = tokenizer.next()) != null) {
+
+            if (excerpt.length() > 0) {
+
+                excerpt.append(' ');
+
+            }
+            // One character past the limit tells a cut excerpt from one that fits exactly
+            final String text = paragraph.trim().replace('\n', ' ');
+            excerpt.append(text, 0, Math.min(text.length(), maxLength + 1 - excerpt.length()));
+
+        }
+        if (excerpt.length() <= maxLength) {
+
+            return excerpt.toString();
+
+        }
+
+        int end = maxLength - 1;
+        while (end > 0 && !Character.isWhitespace(excerpt.charAt(end))) {
+
+            end--;
+
+        }
+        return excerpt.substring(0, end > 0 ? end : maxLength - 1).trim() + "\u2026";
+
+    }
+
+    ParagraphTokenizer(String body) {
+
+        mBody = body;
+
+    }
+
+    /**
+     * Return the next non-empty paragraph, or {@code null} once the body is exhausted.
+     */
+    String next() {
+
+        int c;
+        while ((c = read()) != END) {
+
+            final int last = mParagraph.length() - 1;
+            if (c == '\n' && last >= 0 && mParagraph.charAt(last) == '\n') {
+
+                mParagraph.setLength(last);
+                if (mParagraph.length() > 0) {
+
+                    return take();
+
+                }
+                continue;
+
+            }
+            mParagraph.append((char) c);
+
+        }
+        return mParagraph.length() > 0 ? take() : null;
+
+    }
+
+    private String take() {
+
+        final String paragraph = mParagraph.toString();
+        mParagraph.setLength(0);
+        return paragraph;
+
+    }
+
+    /**
+     * Read the next character with line endings normalised.
+     */
+    private int read() {
+
+        if (mPending != END) {
+
+            final int c = mPending;
+            mPending = END;
+            return c;
+
+        }
+        if (mPosition >= mBody.length()) {
+
+            return END;
+
+        }
+
+        final char c = mBody.charAt(mPosition);
+        if (c == '\r' && mBody.startsWith("\r\n", mPosition)) {
+
+            if (mBody.startsWith("\r\n\r\n", mPosition)) {
+
+                mPosition += 4;
+                mPending = '\n';
+                return '\n';
+
+            }
+            mPosition += 2;
+            return mBody.startsWith(INDENT, mPosition) ? '\n' : ' ';
+
+        }
+        mPosition++;
+        return c;
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.example.xyzreader.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import static com.example.xyzreader.data.ItemsProvider.Tables;
+
+/**
+ * Replaces the stored paragraphs of an article with a fresh split of its body, compressing the
+ * longer ones. The paragraphs are the only stored copy of the body. Statements are compiled
+ * once, so one writer should be reused for every article of a batch and then closed.
+ */
+class ParagraphWriter {
+
+    // Between paragraphs of a body put back together
+    static final String SEPARATOR = "\n\n";
+
+    private final SQLiteStatement mDelete;
+    private final SQLiteStatement mInsert;
+    private final ParagraphCodec mCodec = new ParagraphCodec();
+
+    ParagraphWriter(SQLiteDatabase db) {
+
+        mDelete = db.compileStatement("DELETE FROM " + Tables.PARAGRAPHS + " WHERE " +
+                ItemsContract.ParagraphsColumns.ITEM_ID + "=?");
+        mInsert = db.compileStatement("INSERT INTO " + Tables.PARAGRAPHS + " (" +
+                ItemsContract.ParagraphsColumns.ITEM_ID + "," +
+                ItemsContract.ParagraphsColumns.POSITION + "," +
+                ItemsContract.ParagraphsColumns.TEXT + ") VALUES (?,?,?)");
+
+    }
+
+    /**
+     * Store the paragraphs of {@code body} and return them joined by {@link #SEPARATOR}, the
+     * way {@link SearchIndexWriter#readBody} reads them back.
+     */
+    String write(long itemId, String body) {
+
+        mDelete.bindLong(1, itemId);
+        mDelete.executeUpdateDelete();
+
+        final ParagraphTokenizer tokenizer = new ParagraphTokenizer(body);
+        final StringBuilder joined = new StringBuilder(body.length());
+        int position = 0;
+        String paragraph;
+        while ((paragraph = tokenizer.next()) != null) {
+
+            if (position > 0) {
+
+                joined.append(SEPARATOR);
+
+            }
+            joined.append(paragraph);
+
+            mInsert.bindLong(1, itemId);
+            mInsert.bindLong(2, position++);
+            final byte[] compressed = mCodec.compress(paragraph);
+            if (compressed != null) {
+
+                mInsert.bindBlob(3, compressed);
+
+            }
+            else {
+
+                mInsert.bindString(3, paragraph);
+
+            }
+            mInsert.executeInsert();
+
+        }
+        return joined.toString();
+
+    }
+
+    void close() {
+
+        mDelete.close();
+        mInsert.close();
+        mCodec.release();
+
+    }
+
+}
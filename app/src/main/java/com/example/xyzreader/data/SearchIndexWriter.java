@@ -0,0 +1,118 @@
+package com.example.xyzreader.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import static com.example.xyzreader.data.ItemsProvider.Tables;
+
+/**
+ * Keeps {@link Tables#ITEMS_SEARCH} in step with the articles. The index reads title and author
+ * back from the items table, but the body is only stored as paragraphs: it is handed to the
+ * index when an article is added, and put back into the row for the moment the index takes the
+ * article out again. Must be used inside the transaction that writes the articles. Statements
+ * are compiled once, so one writer should be reused for a batch and then closed.
+ */
+class SearchIndexWriter {
+
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mAdd;
+    private final SQLiteStatement mRemove;
+    private final SQLiteStatement mSetBody;
+
+    SearchIndexWriter(SQLiteDatabase db) {
+
+        mDb = db;
+        mAdd = db.compileStatement("INSERT INTO " + Tables.ITEMS_SEARCH + " (docid, " +
+                ItemsContract.ItemsColumns.TITLE + ", " + ItemsContract.ItemsColumns.AUTHOR +
+                ", " + ItemsContract.ItemsColumns.BODY + ") SELECT " +
+                ItemsContract.ItemsColumns._ID + ", " + ItemsContract.ItemsColumns.TITLE + ", " +
+                ItemsContract.ItemsColumns.AUTHOR + ", ? FROM " + Tables.ITEMS + " WHERE " +
+                ItemsContract.ItemsColumns._ID + "=?");
+        mRemove = db.compileStatement("DELETE FROM " + Tables.ITEMS_SEARCH + " WHERE docid=?");
+        mSetBody = db.compileStatement("UPDATE " + Tables.ITEMS + " SET " +
+                ItemsContract.ItemsColumns.BODY + "=? WHERE " + ItemsContract.ItemsColumns._ID +
+                "=?");
+
+    }
+
+    /**
+     * Index the stored title and author of an article together with its body, as returned by
+     * {@link ParagraphWriter#write}.
+     */
+    void add(long itemId, String body) {
+
+        mAdd.bindString(1, body);
+        mAdd.bindLong(2, itemId);
+        mAdd.executeInsert();
+
+    }
+
+    /**
+     * Take an article out of the index and return its body as it was indexed, read back from
+     * its paragraphs. The index removes exactly the words it is shown, so the article's row
+     * carries the body while that happens and is empty again afterwards.
+     */
+    String remove(long itemId) {
+
+        final String body = readBody(mDb, itemId);
+        setBody(itemId, body);
+        mRemove.bindLong(1, itemId);
+        mRemove.executeUpdateDelete();
+        setBody(itemId, "");
+        return body;
+
+    }
+
+    void close() {
+
+        mAdd.close();
+        mRemove.close();
+        mSetBody.close();
+
+    }
+
+    /**
+     * The stored paragraphs of an article joined the way {@link ParagraphWriter#write} joins
+     * them.
+     */
+    static String readBody(SQLiteDatabase db, long itemId) {
+
+        final Cursor cursor = new ParagraphCursor(db.query(Tables.PARAGRAPHS,
+                new String[]{ItemsContract.ParagraphsColumns.TEXT},
+                ItemsContract.ParagraphsColumns.ITEM_ID + "=?",
+                new String[]{Long.toString(itemId)}, null, null,
+                ItemsContract.ParagraphsColumns.POSITION));
+        try {
+
+            final StringBuilder body = new StringBuilder();
+            while (cursor.moveToNext()) {
+
+                if (body.length() > 0) {
+
+                    body.append(ParagraphWriter.SEPARATOR);
+
+                }
+                body.append(cursor.getString(0));
+
+            }
+            return body.toString();
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+    private void setBody(long itemId, String body) {
+
+        mSetBody.bindString(1, body);
+        mSetBody.bindLong(2, itemId);
+        mSetBody.executeUpdateDelete();
+
+    }
+
+}
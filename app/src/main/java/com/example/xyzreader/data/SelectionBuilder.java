@@ -238,6 +238,21 @@ public class SelectionBuilder {
 
     }
 
+    /**
+     * A comma separated list of {@code count} bind parameters, for an {@code IN (...)} clause.
+     */
+    public static String placeholders(int count) {
+
+        final StringBuilder placeholders = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+
+            placeholders.append(i > 0 ? ",?" : "?");
+
+        }
+        return placeholders.toString();
+
+    }
+
     /**
      * Execute query using the current internal state as {@code WHERE} clause.
      */
@@ -250,12 +265,14 @@ public class SelectionBuilder {
     /**
      * Execute query using the current internal state as {@code WHERE} clause.
      */
-    private Cursor query(SQLiteDatabase db, String[] columns, String groupBy, String having,
-                         String orderBy, String limit) {
+    public Cursor query(SQLiteDatabase db, String[] columns, String groupBy, String having,
+                        String orderBy, String limit) {
 
         assertTable();
         if (columns != null) {
 
+            // Callers often pass a shared projection constant, which must not be rewritten
+            columns = columns.clone();
             mapColumns(columns);
 
         }
@@ -5,19 +5,34 @@ import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.OperationApplicationException;
+import android.database.Cursor;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.RemoteException;
 import android.util.Log;
 
+import com.example.xyzreader.remote.ArticleFeed;
+import com.example.xyzreader.remote.ImageCacheWarmer;
+import com.example.xyzreader.remote.PlaceholderColorExtractor;
+import com.example.xyzreader.remote.RemoteArticle;
 import com.example.xyzreader.remote.RemoteEndpointUtil;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 public class UpdaterService extends IntentService {
 
@@ -26,6 +41,18 @@ public class UpdaterService extends IntentService {
             "com.example.xyzreader.intent.action.STATE_CHANGE";
     public static final String EXTRA_REFRESHING = "com.example.xyzreader.intent.extra.REFRESHING";
 
+    // Number of pending operations held before they are written to the provider
+    private static final int BATCH_SIZE = 50;
+    // Articles given a placeholder colour per sync at most, so a new corpus does not hold up
+    // the next refresh
+    private static final int PLACEHOLDER_COLORS_PER_SYNC = 100;
+    static final int EXCERPT_LENGTH = 200;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Feed dates carry no usable zone and are read as local time
+    private final SimpleDateFormat mDateFormat =
+            new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+
     public UpdaterService() {
 
         super(TAG);
@@ -53,42 +80,37 @@ public class UpdaterService extends IntentService {
                 new Intent(BROADCAST_ACTION_STATE_CHANGE).putExtra(EXTRA_REFRESHING, true));
 
         // Don't even inspect the intent, we only do one thing, and that's fetch content.
-        ArrayList<ContentProviderOperation> cpo = new ArrayList<>();
+        try (ArticleFeed feed = RemoteEndpointUtil.openArticleFeed(this)) {
 
-        Uri dirUri = ItemsContract.Items.buildDirUri();
+            if (feed.isNotModified()) {
 
-        // Delete all items
-        cpo.add(ContentProviderOperation.newDelete(dirUri).build());
+                Log.i(TAG, "Feed not modified, nothing to update.");
 
-        try {
+            }
+            else {
 
-            JSONArray array = RemoteEndpointUtil.fetchJsonArray();
-            if (array == null) {
+                // Screens reload once for the whole sync rather than once per written batch
+                final Uri dirUri = ItemsContract.Items.buildDirUri();
+                getContentResolver().call(dirUri, ItemsContract.METHOD_HOLD_NOTIFICATIONS,
+                        null, null);
+                try {
 
-                throw new JSONException("Invalid parsed item array");
+                    syncArticles(feed);
 
-            }
+                }
+                finally {
 
-            for (int i = 0; i < array.length(); i++) {
+                    getContentResolver().call(dirUri,
+                            ItemsContract.METHOD_RELEASE_NOTIFICATIONS, null, null);
 
-                ContentValues values = new ContentValues();
-                JSONObject object = array.getJSONObject(i);
-                values.put(ItemsContract.Items.SERVER_ID, object.getString("id"));
-                values.put(ItemsContract.Items.AUTHOR, object.getString("author"));
-                values.put(ItemsContract.Items.TITLE, object.getString("title"));
-                values.put(ItemsContract.Items.BODY, object.getString("body"));
-                values.put(ItemsContract.Items.THUMB_URL, object.getString("thumb"));
-                values.put(ItemsContract.Items.PHOTO_URL, object.getString("photo"));
-                values.put(ItemsContract.Items.ASPECT_RATIO, object.getString("aspect_ratio"));
-                values.put(ItemsContract.Items.PUBLISHED_DATE, object.getString("published_date"));
-                cpo.add(ContentProviderOperation.newInsert(dirUri).withValues(values).build());
+                }
+                feed.markSynced();
 
             }
 
-            getContentResolver().applyBatch(ItemsContract.CONTENT_AUTHORITY, cpo);
-
         }
-        catch (JSONException | RemoteException | OperationApplicationException e) {
+        catch (IOException | NoSuchAlgorithmException | RemoteException |
+                OperationApplicationException e) {
 
             Log.e(TAG, "Error updating content.", e);
 
@@ -97,6 +119,438 @@ public class UpdaterService extends IntentService {
         sendStickyBroadcast(
                 new Intent(BROADCAST_ACTION_STATE_CHANGE).putExtra(EXTRA_REFRESHING, false));
 
+        // After the refresh is reported done, these only fill in extras. Colours are taken
+        // from cached thumbnails, so the warmer goes first.
+        warmImageCache();
+        extractPlaceholderColors();
+
+    }
+
+    /**
+     * Store a placeholder colour for up to {@link #PLACEHOLDER_COLORS_PER_SYNC} of the newest
+     * articles that have none yet. Colours only come from thumbnails already in the image
+     * cache, so this never downloads; the rest get theirs in a later sync.
+     */
+    private void extractPlaceholderColors() {
+
+        // Read up front, the writes below take rows out of this selection
+        final List<Long> ids = new ArrayList<>();
+        final List<String> thumbUrls = new ArrayList<>();
+        final Cursor cursor = getContentResolver().query(
+                ItemsContract.Items.buildFirstPageUri(PLACEHOLDER_COLORS_PER_SYNC),
+                new String[]{ItemsContract.Items._ID, ItemsContract.Items.THUMB_URL},
+                ItemsContract.Items.PLACEHOLDER_COLOR + " IS NULL", null,
+                ItemsContract.Items.DEFAULT_SORT);
+        if (cursor == null) {
+
+            return;
+
+        }
+        try {
+
+            while (cursor.moveToNext()) {
+
+                ids.add(cursor.getLong(0));
+                thumbUrls.add(cursor.getString(1));
+
+            }
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+        final PlaceholderColorExtractor extractor = new PlaceholderColorExtractor(this);
+        final ArrayList<ContentProviderOperation> cpo = new ArrayList<>(BATCH_SIZE);
+        // Like the sync, the whole pass reaches the screens as one change
+        final Uri dirUri = ItemsContract.Items.buildDirUri();
+        getContentResolver().call(dirUri, ItemsContract.METHOD_HOLD_NOTIFICATIONS, null, null);
+        try {
+
+            for (int i = 0; i < ids.size() && !Thread.currentThread().isInterrupted(); i++) {
+
+                // Left empty when not cached yet and tried again by the next sync
+                final Integer color = extractor.extract(thumbUrls.get(i));
+                if (color == null) {
+
+                    continue;
+
+                }
+                cpo.add(ContentProviderOperation
+                        .newUpdate(ItemsContract.Items.buildItemUri(ids.get(i)))
+                        .withValue(ItemsContract.Items.PLACEHOLDER_COLOR, color).build());
+                if (cpo.size() >= BATCH_SIZE) {
+
+                    applyBatch(cpo);
+
+                }
+
+            }
+            applyBatch(cpo);
+
+        }
+        catch (RemoteException | OperationApplicationException e) {
+
+            Log.e(TAG, "Error storing placeholder colours.", e);
+
+        }
+        finally {
+
+            getContentResolver().call(dirUri, ItemsContract.METHOD_RELEASE_NOTIFICATIONS, null,
+                    null);
+
+        }
+
+    }
+
+    /**
+     * Fetch the images of the stored articles into the image cache, newest first. The URLs
+     * are read from the database only as far as the warmer gets.
+     */
+    private void warmImageCache() {
+
+        final StoredUrls thumbUrls = new StoredUrls(ItemsContract.Items.THUMB_URL);
+        final StoredUrls photoUrls = new StoredUrls(ItemsContract.Items.PHOTO_URL);
+        try {
+
+            new ImageCacheWarmer(this).warm(thumbUrls, photoUrls);
+
+        }
+        finally {
+
+            thumbUrls.close();
+            photoUrls.close();
+
+        }
+
+    }
+
+    /**
+     * Bring the local articles in line with the feed, writing only what changed. The feed is
+     * handled in batches and only the stored articles of the batch at hand are looked up, so
+     * memory does not grow with the number of articles.
+     */
+    private void syncArticles(ArticleFeed feed)
+            throws IOException, NoSuchAlgorithmException, RemoteException,
+            OperationApplicationException {
+
+        // Every article found in the feed is marked with this, the ones left with an older
+        // value afterwards are gone from the server
+        final long generation = System.currentTimeMillis();
+        final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        final List<RemoteArticle> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (feed.hasNext()) {
+
+            RemoteArticle article = feed.next();
+            if (!article.isComplete()) {
+
+                Log.w(TAG, "Skipping incomplete article " + article.id);
+                continue;
+
+            }
+            batch.add(article);
+            if (batch.size() >= BATCH_SIZE) {
+
+                syncBatch(batch, generation, digest);
+
+            }
+
+        }
+        syncBatch(batch, generation, digest);
+
+        // Only reached once the whole feed parsed, so a truncated download deletes nothing
+        getContentResolver().delete(ItemsContract.Items.buildDirUri(),
+                ItemsContract.Items.SYNC_GENERATION + "!=?",
+                new String[]{Long.toString(generation)});
+
+    }
+
+    /**
+     * Write a batch of feed articles and clear it. New articles go through the provider's bulk
+     * insert, changed ones through operations, and unchanged ones only get the generation.
+     */
+    private void syncBatch(List<RemoteArticle> batch, long generation, MessageDigest digest)
+            throws RemoteException, OperationApplicationException {
+
+        if (batch.isEmpty()) {
+
+            return;
+
+        }
+
+        final Map<String, LocalItem> localItems = queryLocalItems(batch);
+        final ArrayList<ContentValues> inserts = new ArrayList<>(batch.size());
+        final ArrayList<ContentProviderOperation> cpo = new ArrayList<>(batch.size() + 1);
+        final List<String> unchangedIds = new ArrayList<>(batch.size());
+        final Set<String> batchIds = new HashSet<>(batch.size());
+
+        for (RemoteArticle article : batch) {
+
+            // Written by an earlier batch of this sync, or earlier in this one
+            LocalItem local = localItems.get(article.id);
+            if (!batchIds.add(article.id) || (local != null && local.generation == generation)) {
+
+                Log.w(TAG, "Skipping duplicate article " + article.id);
+                continue;
+
+            }
+
+            String hash = hash(digest, article);
+            if (local != null && hash.equals(local.hash)) {
+
+                unchangedIds.add(Long.toString(local.id));
+                continue;
+
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(ItemsContract.Items.SERVER_ID, article.id);
+            values.put(ItemsContract.Items.AUTHOR, article.author);
+            values.put(ItemsContract.Items.TITLE, article.title);
+            values.put(ItemsContract.Items.BODY, article.body);
+            values.put(ItemsContract.Items.EXCERPT,
+                    ParagraphTokenizer.excerpt(article.body, EXCERPT_LENGTH));
+            values.put(ItemsContract.Items.THUMB_URL, article.thumb);
+            values.put(ItemsContract.Items.PHOTO_URL, article.photo);
+            values.put(ItemsContract.Items.ASPECT_RATIO, article.aspectRatio);
+            values.put(ItemsContract.Items.PUBLISHED_DATE, parsePublishedDate(article));
+            values.put(ItemsContract.Items.CONTENT_HASH, hash);
+            values.put(ItemsContract.Items.SYNC_GENERATION, generation);
+            if (local == null) {
+
+                inserts.add(values);
+
+            }
+            else {
+
+                // The thumbnail may have changed, its colour is taken again after the sync
+                values.putNull(ItemsContract.Items.PLACEHOLDER_COLOR);
+                cpo.add(ContentProviderOperation
+                        .newUpdate(ItemsContract.Items.buildItemUri(local.id))
+                        .withValues(values).build());
+
+            }
+
+        }
+        if (!unchangedIds.isEmpty()) {
+
+            cpo.add(ContentProviderOperation.newUpdate(ItemsContract.Items.buildDirUri())
+                    .withValue(ItemsContract.Items.SYNC_GENERATION, generation)
+                    .withSelection(ItemsContract.Items._ID + " IN (" +
+                                    SelectionBuilder.placeholders(unchangedIds.size()) + ")",
+                            unchangedIds.toArray(new String[unchangedIds.size()]))
+                    .build());
+
+        }
+
+        bulkInsert(inserts);
+        applyBatch(cpo);
+        batch.clear();
+
+    }
+
+    private long parsePublishedDate(RemoteArticle article) {
+
+        try {
+
+            return mDateFormat.parse(article.publishedDate).getTime();
+
+        }
+        catch (ParseException ex) {
+
+            Log.e(TAG, ex.getMessage());
+            Log.i(TAG, "passing today's date");
+            return System.currentTimeMillis();
+
+        }
+
+    }
+
+    /**
+     * Read the row id, content hash and generation of the stored articles among the batch,
+     * keyed by server id. Served by the unique server id index.
+     */
+    private Map<String, LocalItem> queryLocalItems(List<RemoteArticle> batch) {
+
+        final String[] serverIds = new String[batch.size()];
+        for (int i = 0; i < serverIds.length; i++) {
+
+            serverIds[i] = batch.get(i).id;
+
+        }
+        Map<String, LocalItem> items = new HashMap<>(serverIds.length);
+        Cursor cursor = getContentResolver().query(ItemsContract.Items.buildDirUri(),
+                new String[]{ItemsContract.Items._ID, ItemsContract.Items.SERVER_ID,
+                             ItemsContract.Items.CONTENT_HASH,
+                             ItemsContract.Items.SYNC_GENERATION},
+                ItemsContract.Items.SERVER_ID + " IN (" +
+                        SelectionBuilder.placeholders(serverIds.length) + ")", serverIds, null);
+        if (cursor == null) {
+
+            return items;
+
+        }
+        try {
+
+            while (cursor.moveToNext()) {
+
+                items.put(cursor.getString(1), new LocalItem(cursor.getLong(0),
+                        cursor.getString(2), cursor.getLong(3)));
+
+            }
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+        return items;
+
+    }
+
+    private static String hash(MessageDigest digest, RemoteArticle article) {
+
+        digest.reset();
+        update(digest, article.author);
+        update(digest, article.title);
+        update(digest, article.body);
+        update(digest, article.thumb);
+        update(digest, article.photo);
+        update(digest, article.aspectRatio);
+        update(digest, article.publishedDate);
+
+        byte[] bytes = digest.digest();
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+               .append(Character.forDigit(b & 0xf, 16));
+
+        }
+        return hex.toString();
+
+    }
+
+    private static void update(MessageDigest digest, String field) {
+
+        digest.update(field.getBytes(UTF_8));
+        // Separator so that moving text between adjacent fields changes the hash
+        digest.update((byte) 0);
+
+    }
+
+    /**
+     * Insert the pending new articles in one provider call and clear them.
+     */
+    private void bulkInsert(ArrayList<ContentValues> inserts) {
+
+        if (inserts.isEmpty()) {
+
+            return;
+
+        }
+        getContentResolver().bulkInsert(ItemsContract.Items.buildDirUri(),
+                inserts.toArray(new ContentValues[inserts.size()]));
+        inserts.clear();
+
+    }
+
+    /**
+     * Write the pending operations to the provider and clear them.
+     */
+    private void applyBatch(ArrayList<ContentProviderOperation> cpo)
+            throws RemoteException, OperationApplicationException {
+
+        if (cpo.isEmpty()) {
+
+            return;
+
+        }
+        getContentResolver().applyBatch(ItemsContract.CONTENT_AUTHORITY, cpo);
+        cpo.clear();
+
+    }
+
+    /**
+     * One URL column of the stored articles in default order. The query runs on the first
+     * call to {@link #hasNext()}, so a column that is never read is never queried.
+     */
+    private class StoredUrls implements Iterator<String> {
+
+        private final String mColumn;
+        private Cursor mCursor;
+        private boolean mQueried;
+
+        StoredUrls(String column) {
+
+            mColumn = column;
+
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (!mQueried) {
+
+                mQueried = true;
+                mCursor = getContentResolver().query(ItemsContract.Items.buildDirUri(),
+                        new String[]{mColumn}, null, null, ItemsContract.Items.DEFAULT_SORT);
+
+            }
+            return mCursor != null && mCursor.getPosition() < mCursor.getCount() - 1;
+
+        }
+
+        @Override
+        public String next() {
+
+            if (!hasNext()) {
+
+                throw new NoSuchElementException();
+
+            }
+            mCursor.moveToNext();
+            return mCursor.getString(0);
+
+        }
+
+        @Override
+        public void remove() {
+
+            throw new UnsupportedOperationException();
+
+        }
+
+        void close() {
+
+            if (mCursor != null) {
+
+                mCursor.close();
+
+            }
+
+        }
+
+    }
+
+    private static class LocalItem {
+
+        final long id;
+        final String hash;
+        final long generation;
+
+        LocalItem(long id, String hash, long generation) {
+
+            this.id = id;
+            this.hash = hash;
+            this.generation = generation;
+
+        }
+
     }
 
 }
@@ -0,0 +1,165 @@
+package com.example.xyzreader.remote;
+
+import android.content.SharedPreferences;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import okhttp3.Response;
+
+/**
+ * Pull parser over the remote article feed. Articles are read one at a time straight off the
+ * response body, so only the article currently being parsed is held in memory.
+ */
+public class ArticleFeed implements Closeable {
+
+    private final Response mResponse;
+    private final JsonReader mReader;
+    private final SharedPreferences mPrefs;
+
+    static ArticleFeed notModified() {
+
+        return new ArticleFeed();
+
+    }
+
+    private ArticleFeed() {
+
+        mResponse = null;
+        mReader = null;
+        mPrefs = null;
+
+    }
+
+    ArticleFeed(Response response, SharedPreferences prefs) throws IOException {
+
+        if (response.body() == null) {
+
+            throw new IOException("Empty response body");
+
+        }
+        mResponse = response;
+        mPrefs = prefs;
+        mReader = new JsonReader(response.body().charStream());
+        try {
+
+            mReader.beginArray();
+
+        }
+        catch (IllegalStateException e) {
+
+            throw new IOException("Expected JSON array", e);
+
+        }
+
+    }
+
+    /**
+     * Whether the server reported that the feed has not changed since the last successful sync.
+     * Such a feed has no articles.
+     */
+    public boolean isNotModified() {
+
+        return mResponse == null;
+
+    }
+
+    public boolean hasNext() throws IOException {
+
+        return mReader != null && mReader.hasNext();
+
+    }
+
+    public RemoteArticle next() throws IOException {
+
+        final RemoteArticle article = new RemoteArticle();
+        try {
+
+            mReader.beginObject();
+            while (mReader.hasNext()) {
+
+                final String name = mReader.nextName();
+                if (mReader.peek() == JsonToken.NULL) {
+
+                    mReader.skipValue();
+                    continue;
+
+                }
+                switch (name) {
+
+                    case "id":
+                        article.id = mReader.nextString();
+                        break;
+                    case "author":
+                        article.author = mReader.nextString();
+                        break;
+                    case "title":
+                        article.title = mReader.nextString();
+                        break;
+                    case "body":
+                        article.body = mReader.nextString();
+                        break;
+                    case "thumb":
+                        article.thumb = mReader.nextString();
+                        break;
+                    case "photo":
+                        article.photo = mReader.nextString();
+                        break;
+                    case "aspect_ratio":
+                        article.aspectRatio = mReader.nextString();
+                        break;
+                    case "published_date":
+                        article.publishedDate = mReader.nextString();
+                        break;
+                    default:
+                        mReader.skipValue();
+                        break;
+
+                }
+
+            }
+            mReader.endObject();
+
+        }
+        catch (IllegalStateException e) {
+
+            throw new IOException("Malformed article", e);
+
+        }
+        return article;
+
+    }
+
+    /**
+     * Remember this response's validators for the next request. Call only once every article
+     * has been stored, otherwise a failed sync would be skipped as unchanged next time.
+     */
+    public void markSynced() {
+
+        if (mResponse == null) {
+
+            return;
+
+        }
+        mPrefs.edit()
+              .putString(RemoteEndpointUtil.PREF_ETAG, mResponse.header("ETag"))
+              .putString(RemoteEndpointUtil.PREF_LAST_MODIFIED,
+                      mResponse.header("Last-Modified"))
+              .apply();
+
+    }
+
+    @Override
+    public void close() {
+
+        if (mResponse != null) {
+
+            mResponse.close();
+
+        }
+
+    }
+
+}
@@ -10,6 +10,11 @@ class Config {
     public static final URL BASE_URL;
     private static final String TAG = Config.class.toString();
 
+    // Image cache warming after a sync, see ImageCacheWarmer. A budget of 0 turns it off.
+    static final long WARM_BYTE_BUDGET = 20 * 1024 * 1024;
+    static final int WARM_MAX_CONCURRENT = 4;
+    static final boolean WARM_PHOTOS = false;
+
     static {
 
         URL url = null;
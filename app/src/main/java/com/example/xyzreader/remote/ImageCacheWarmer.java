@@ -0,0 +1,187 @@
+package com.example.xyzreader.remote;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Downloads article images into Glide's disk cache ahead of time, so that the first scroll
+ * after a refresh does not wait on the network. Only the source data is cached, which is what
+ * later requests of any size decode from. Runs on unmetered connections only and stops once
+ * its byte budget is used up.
+ */
+public class ImageCacheWarmer {
+
+    private static final String TAG = "ImageCacheWarmer";
+    private static final long DOWNLOAD_TIMEOUT_SECONDS = 30;
+
+    private final Context mContext;
+    private final long mByteBudget;
+    private final int mMaxConcurrent;
+    private final boolean mIncludePhotos;
+
+    public ImageCacheWarmer(Context context) {
+
+        this(context, Config.WARM_BYTE_BUDGET, Config.WARM_MAX_CONCURRENT, Config.WARM_PHOTOS);
+
+    }
+
+    public ImageCacheWarmer(Context context, long byteBudget, int maxConcurrent,
+                            boolean includePhotos) {
+
+        mContext = context.getApplicationContext();
+        mByteBudget = byteBudget;
+        mMaxConcurrent = maxConcurrent;
+        mIncludePhotos = includePhotos;
+
+    }
+
+    /**
+     * Download the given images in order, thumbnails first and photos after them if enabled.
+     * Both should be in priority order, newest article first, and are only read as far as the
+     * budget goes. Images already in the cache do not count against the budget. It is checked
+     * before each download, so it can be overrun by the downloads already in flight. Blocks
+     * until done and must not be called on the main thread.
+     */
+    public void warm(Iterator<String> thumbUrls, Iterator<String> photoUrls) {
+
+        if (mByteBudget <= 0 || !isUnmetered()) {
+
+            return;
+
+        }
+
+        final List<Iterator<String>> sources = mIncludePhotos
+                ? Arrays.asList(thumbUrls, photoUrls) : Collections.singletonList(thumbUrls);
+        final RequestManager requestManager = Glide.with(mContext);
+        final ArrayDeque<Download> inFlight = new ArrayDeque<>(mMaxConcurrent);
+        long bytes = 0;
+        int count = 0;
+        for (Iterator<String> urls : sources) {
+
+            while (urls.hasNext() && bytes < mByteBudget &&
+                    !Thread.currentThread().isInterrupted() && isUnmetered()) {
+
+                if (inFlight.size() >= mMaxConcurrent) {
+
+                    bytes += inFlight.poll().await(requestManager);
+
+                }
+                inFlight.add(new Download(requestManager, urls.next()));
+                count++;
+
+            }
+
+        }
+        while (!inFlight.isEmpty()) {
+
+            bytes += inFlight.poll().await(requestManager);
+
+        }
+        Log.i(TAG, "Warmed " + count + " images, downloaded " + bytes + " bytes");
+
+    }
+
+    private boolean isUnmetered() {
+
+        final ConnectivityManager cm =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+
+            return false;
+
+        }
+        final NetworkInfo ni = cm.getActiveNetworkInfo();
+        return ni != null && ni.isConnected() && !cm.isActiveNetworkMetered();
+
+    }
+
+    /**
+     * One image download, which knows whether the file came from the network or was already
+     * cached.
+     */
+    private static class Download implements RequestListener<File> {
+
+        private final FutureTarget<File> mTarget;
+        // Set on the main thread before the target completes
+        private volatile boolean mFromNetwork;
+
+        Download(RequestManager requestManager, String url) {
+
+            // Low priority and no memory cache, as set up by downloadOnly()
+            mTarget = requestManager.downloadOnly().load(url).listener(this).submit();
+
+        }
+
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                    Target<File> target, boolean isFirstResource) {
+
+            return false;
+
+        }
+
+        @Override
+        public boolean onResourceReady(File resource, Object model, Target<File> target,
+                                       DataSource dataSource, boolean isFirstResource) {
+
+            mFromNetwork = dataSource == DataSource.REMOTE;
+            return false;
+
+        }
+
+        /**
+         * Wait for the download and return the bytes fetched, 0 if the image was already
+         * cached or the download failed.
+         */
+        long await(RequestManager requestManager) {
+
+            try {
+
+                final File file = mTarget.get(DOWNLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                return mFromNetwork ? file.length() : 0;
+
+            }
+            catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                return 0;
+
+            }
+            catch (ExecutionException | TimeoutException e) {
+
+                Log.w(TAG, "Error warming image", e);
+                return 0;
+
+            }
+            finally {
+
+                requestManager.clear(mTarget);
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.example.xyzreader.remote;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Holder for the single {@link OkHttpClient} all app traffic goes through, so that the feed and
+ * the image pipeline share connections, dispatcher limits and timeouts. Clients that need
+ * different settings should derive from it with {@link OkHttpClient#newBuilder()}, which keeps
+ * the connection pool and dispatcher.
+ */
+public class NetworkClient {
+
+    private static final int MAX_REQUESTS = 32;
+    // Thumbnails and photos mostly come from one host
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 20;
+    private static final long WRITE_TIMEOUT_SECONDS = 20;
+
+    private static OkHttpClient sClient;
+
+    private NetworkClient() {
+
+    }
+
+    public static synchronized OkHttpClient get() {
+
+        if (sClient == null) {
+
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(MAX_REQUESTS);
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+            // Gzip is negotiated transparently by OkHttp as long as no caller sets
+            // Accept-Encoding itself.
+            sClient = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES,
+                            TimeUnit.MINUTES))
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .build();
+
+        }
+        return sClient;
+
+    }
+
+}
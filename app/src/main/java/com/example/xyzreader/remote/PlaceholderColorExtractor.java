@@ -0,0 +1,89 @@
+package com.example.xyzreader.remote;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v7.graphics.Palette;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestOptions;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Picks the colour shown in place of an article's images until they load. The thumbnail is
+ * decoded small from Glide's caches, where the grid or the {@link ImageCacheWarmer} put it.
+ * Nothing is downloaded, so this is cheap on any network. Blocks and must not be called on the
+ * main thread.
+ */
+public class PlaceholderColorExtractor {
+
+    private static final String TAG = "PlaceholderColor";
+    // Only reads from the disk cache, so this is only hit by a stuck decode
+    private static final long DECODE_TIMEOUT_SECONDS = 5;
+    // Palette scales larger images down to about this much anyway
+    private static final int DECODE_SIZE = 100;
+
+    private final RequestManager mRequestManager;
+
+    public PlaceholderColorExtractor(Context context) {
+
+        mRequestManager = Glide.with(context.getApplicationContext());
+
+    }
+
+    /**
+     * Return the vibrant colour of the thumbnail, or its dominant colour when it has no
+     * vibrant one. Returns {@code null} if the thumbnail is not cached or has no colours.
+     */
+    public Integer extract(String thumbUrl) {
+
+        final FutureTarget<Bitmap> target = mRequestManager.asBitmap().load(thumbUrl)
+                .apply(RequestOptions.formatOf(DecodeFormat.PREFER_RGB_565)
+                                     .onlyRetrieveFromCache(true))
+                .submit(DECODE_SIZE, DECODE_SIZE);
+        try {
+
+            final Palette palette = Palette.from(target.get(DECODE_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS)).generate();
+            Palette.Swatch swatch = palette.getVibrantSwatch();
+            if (swatch == null) {
+
+                swatch = palette.getDominantSwatch();
+
+            }
+            return (swatch != null) ? swatch.getRgb() : null;
+
+        }
+        catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return null;
+
+        }
+        catch (ExecutionException e) {
+
+            // Usually just not cached yet
+            return null;
+
+        }
+        catch (TimeoutException e) {
+
+            Log.w(TAG, "Timed out decoding " + thumbUrl, e);
+            return null;
+
+        }
+        finally {
+
+            mRequestManager.clear(target);
+
+        }
+
+    }
+
+}
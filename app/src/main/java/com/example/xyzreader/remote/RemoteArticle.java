@@ -0,0 +1,27 @@
+package com.example.xyzreader.remote;
+
+/**
+ * A single article as read from the remote feed.
+ */
+public class RemoteArticle {
+
+    public String id;
+    public String author;
+    public String title;
+    public String body;
+    public String thumb;
+    public String photo;
+    public String aspectRatio;
+    public String publishedDate;
+
+    /**
+     * Whether every field the local database requires was present in the feed.
+     */
+    public boolean isComplete() {
+
+        return id != null && author != null && title != null && body != null && thumb != null &&
+                photo != null && aspectRatio != null && publishedDate != null;
+
+    }
+
+}
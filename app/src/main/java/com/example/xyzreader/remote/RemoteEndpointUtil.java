@@ -1,12 +1,10 @@
 package com.example.xyzreader.remote;
 
-import android.util.Log;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONTokener;
+import android.content.Context;
+import android.content.SharedPreferences;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
 
 import okhttp3.OkHttpClient;
@@ -15,64 +13,92 @@ import okhttp3.Response;
 
 public class RemoteEndpointUtil {
 
-    private static final String TAG = "RemoteEndpointUtil";
+    private static final String PREFS_NAME = "remote_endpoint";
+    static final String PREF_ETAG = "etag";
+    static final String PREF_LAST_MODIFIED = "last_modified";
 
     private RemoteEndpointUtil() {
 
     }
 
-    public static JSONArray fetchJsonArray() {
+    /**
+     * Open the article feed for streaming. The request carries the validators of the last
+     * successfully synced response, so the returned feed may report
+     * {@link ArticleFeed#isNotModified()}. The caller owns the returned feed and must close it.
+     * <p>
+     * There is no HTTP cache: the articles table is the local copy, and the validators only
+     * move forward once it holds the whole response.
+     */
+    public static ArticleFeed openArticleFeed(Context context) throws IOException {
+
+        final SharedPreferences prefs = getPreferences(context);
+        final Response response = execute(NetworkClient.get(), Config.BASE_URL,
+                prefs.getString(PREF_ETAG, null), prefs.getString(PREF_LAST_MODIFIED, null));
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
 
-        String itemsJson;
+            response.close();
+            return ArticleFeed.notModified();
+
+        }
         try {
 
-            itemsJson = fetchPlainText(Config.BASE_URL);
+            return new ArticleFeed(response, prefs);
 
         }
         catch (IOException e) {
 
-            Log.e(TAG, "Error fetching items JSON", e);
-            return null;
+            response.close();
+            throw e;
 
         }
 
-        // Parse JSON
-        try {
-
-            JSONTokener tokener = new JSONTokener(itemsJson);
-            Object val = tokener.nextValue();
-            if (!(val instanceof JSONArray)) {
+    }
 
-                throw new JSONException("Expected JSONArray");
+    /**
+     * Forget the stored validators, so that the next fetch downloads the full feed. Must be
+     * called whenever the local copy of the feed is lost.
+     */
+    public static void clearValidators(Context context) {
 
-            }
-            return (JSONArray) val;
+        getPreferences(context).edit().remove(PREF_ETAG).remove(PREF_LAST_MODIFIED).apply();
 
-        }
-        catch (JSONException e) {
+    }
 
-            Log.e(TAG, "Error parsing items JSON", e);
+    private static SharedPreferences getPreferences(Context context) {
 
-        }
-        return null;
+        return context.getApplicationContext()
+                      .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
 
     }
 
-    private static String fetchPlainText(URL url) throws IOException {
+    /**
+     * Fetch {@code url}, conditional on whichever of the validators is not {@code null}. Returns
+     * a successful or a 304 response, any other status is thrown as an IOException.
+     */
+    static Response execute(OkHttpClient client, URL url, String etag, String lastModified)
+            throws IOException {
 
-        OkHttpClient client = new OkHttpClient();
+        Request.Builder builder = new Request.Builder().url(url);
+        if (etag != null) {
 
-        Request request = new Request.Builder().url(url).build();
+            builder.header("If-None-Match", etag);
 
-        Response response = client.newCall(request).execute();
-        if (response.body() != null) {
-            return response.body().string();
         }
-        else {
+        if (lastModified != null) {
+
+            builder.header("If-Modified-Since", lastModified);
+
+        }
+
+        Response response = client.newCall(builder.build()).execute();
+        if (!response.isSuccessful() &&
+                response.code() != HttpURLConnection.HTTP_NOT_MODIFIED) {
 
-            return null;
+            response.close();
+            throw new IOException("Unexpected response code " + response.code());
 
         }
+        return response;
 
     }
 
@@ -2,35 +2,71 @@ package com.example.xyzreader.ui;
 
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.design.widget.CollapsingToolbarLayout;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentStatePagerAdapter;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.ShareCompat;
+import android.support.v4.content.ContextCompat;
 import android.support.v4.content.Loader;
+import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.ViewPager;
 import android.support.v4.view.ViewPager.OnPageChangeListener;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.ImageView;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
+import com.example.xyzreader.BuildConfig;
 import com.example.xyzreader.R;
 import com.example.xyzreader.data.ArticleLoader;
 import com.example.xyzreader.data.ItemsContract;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An activity representing a single Article detail screen, letting you swipe between articles.
  */
 public class ArticleDetailActivity extends AppCompatActivity
-        implements LoaderManager.LoaderCallbacks<Cursor> {
-
+        implements LoaderManager.LoaderCallbacks<Cursor>, ArticleStore.Owner {
+
+    /**
+     * Pixel width the list decoded article thumbnails at, so the backdrop can show them from
+     * memory while the photo loads. Each thumbnail's height follows from its aspect ratio.
+     */
+    public static final String EXTRA_THUMBNAIL_WIDTH = "thumbnail_width";
+
+    private static final String TAG = "ArticleDetailActivity";
+
+    private ArticleStore mStore;
+    // Articles on either side of the current page whose data and photo are loaded ahead
+    private int mPrefetchDistance;
+    // Running photo preloads by article id, cleared once the article leaves the window
+    private final LongSparseArray<Target<Drawable>> mPhotoPreloads = new LongSparseArray<>();
+    // Debug builds: waits for the article of the selected page to log how long it took
+    private ArticleStore.Listener mTimedListener;
+    private long mTimedId;
+    private int mDefaultPlaceholderColor;
+    private int mThumbnailWidth;
     private Cursor mCursor;
     private long mStartId;
     private OnPageChangeListener listener;
@@ -46,6 +82,14 @@ public class ArticleDetailActivity extends AppCompatActivity
         final Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
+        mStore = new ArticleStore(getContentResolver());
+        mPrefetchDistance = getResources().getInteger(R.integer.detail_prefetch_distance);
+        mDefaultPlaceholderColor = ContextCompat.getColor(this, R.color.colorPrimary);
+        if (getIntent() != null) {
+
+            mThumbnailWidth = getIntent().getIntExtra(EXTRA_THUMBNAIL_WIDTH, 0);
+
+        }
         getSupportLoaderManager().initLoader(0, null, this);
 
         mPagerAdapter = new MyPagerAdapter(getSupportFragmentManager());
@@ -57,9 +101,17 @@ public class ArticleDetailActivity extends AppCompatActivity
             @Override
             public void onClick(View v) {
 
+                if (mCursor == null || !mCursor.moveToPosition(mPager.getCurrentItem())) {
+
+                    return;
+
+                }
+                String text = getString(R.string.share_text,
+                        mCursor.getString(ArticleLoader.Query.TITLE),
+                        mCursor.getString(ArticleLoader.Query.EXCERPT));
                 startActivity(Intent.createChooser(
                         ShareCompat.IntentBuilder.from(ArticleDetailActivity.this)
-                                                 .setType("text/plain").setText("Some sample text")
+                                                 .setType("text/plain").setText(text)
                                                  .getIntent(), getString(R.string.action_share)));
 
             }
@@ -76,12 +128,37 @@ public class ArticleDetailActivity extends AppCompatActivity
             @Override
             public void onPageSelected(int position) {
 
-                mCursor.moveToPosition(position);
+                if (mCursor == null || !mCursor.moveToPosition(position)) {
+
+                    return;
+
+                }
 
-                String photoUrl = mCursor.getString(ArticleLoader.Query.PHOTO_URL);
+                // Shown until the photo loads and behind the collapsed toolbar
+                final int color = ArticleImages.placeholderColor(mCursor,
+                        mDefaultPlaceholderColor);
+                CollapsingToolbarLayout collapsing = findViewById(R.id.collapsing);
+                collapsing.setContentScrimColor(color);
                 ImageView backdrop = findViewById(R.id.backdrop);
-                Glide.with(ArticleDetailActivity.this).load(photoUrl)
-                     .transition(DrawableTransitionOptions.withCrossFade()).into(backdrop);
+                backdrop.setBackgroundColor(color);
+                // The size this article's grid cell decoded its thumbnail at
+                final int thumbnailHeight = AspectRatioImageView.heightFor(mThumbnailWidth,
+                        ArticleImages.aspectRatio(mCursor));
+                RequestBuilder<Drawable> photo = ArticleImages.photo(
+                        Glide.with(ArticleDetailActivity.this),
+                        mCursor.getString(ArticleLoader.Query.PHOTO_URL),
+                        mCursor.getString(ArticleLoader.Query.THUMB_URL), mThumbnailWidth,
+                        thumbnailHeight);
+                if (BuildConfig.DEBUG) {
+
+                    final long id = mCursor.getLong(ArticleLoader.Query._ID);
+                    final long selectedAt = SystemClock.elapsedRealtime();
+                    photo = photo.listener(new PhotoTimingListener(id, selectedAt));
+                    logTimeToContent(id, selectedAt);
+
+                }
+                photo.into(backdrop);
+                prefetchAround(position);
 
             }
 
@@ -114,6 +191,106 @@ public class ArticleDetailActivity extends AppCompatActivity
 
     }
 
+    @Override
+    protected void onDestroy() {
+
+        super.onDestroy();
+        mStore.close();
+
+    }
+
+    @Override
+    public ArticleStore getArticleStore() {
+
+        return mStore;
+
+    }
+
+    /**
+     * Log how long after the page was selected its article could be shown. Debug builds only.
+     */
+    private void logTimeToContent(final long id, final long selectedAt) {
+
+        // A page swiped past before its content arrived is not timed
+        if (mTimedListener != null) {
+
+            mStore.removeListener(mTimedId, mTimedListener);
+
+        }
+        mTimedId = id;
+        mTimedListener = new ArticleStore.Listener() {
+
+            @Override
+            public void onArticleLoaded(ArticleStore.Article article) {
+
+                mStore.removeListener(id, this);
+                mTimedListener = null;
+                Log.d(TAG, "Content of " + id + " after " +
+                        (SystemClock.elapsedRealtime() - selectedAt) + " ms");
+
+            }
+
+        };
+        mStore.addListener(id, mTimedListener);
+
+    }
+
+    /**
+     * Load the data and photos of the neighbours of the page at {@code position} at low
+     * priority, nearest first, and cancel whatever was loading for pages outside that window.
+     */
+    private void prefetchAround(int position) {
+
+        final List<Long> ids = new ArrayList<>(2 * mPrefetchDistance);
+        final List<String> photoUrls = new ArrayList<>(2 * mPrefetchDistance);
+        for (int distance = 1; distance <= mPrefetchDistance; distance++) {
+
+            for (int neighbour : new int[]{position + distance, position - distance}) {
+
+                if (mCursor.moveToPosition(neighbour)) {
+
+                    ids.add(mCursor.getLong(ArticleLoader.Query._ID));
+                    photoUrls.add(mCursor.getString(ArticleLoader.Query.PHOTO_URL));
+
+                }
+
+            }
+
+        }
+        mStore.prefetch(ids);
+
+        final RequestManager glide = Glide.with(this);
+        for (int i = mPhotoPreloads.size() - 1; i >= 0; i--) {
+
+            if (!ids.contains(mPhotoPreloads.keyAt(i))) {
+
+                glide.clear(mPhotoPreloads.valueAt(i));
+                mPhotoPreloads.removeAt(i);
+
+            }
+
+        }
+        // Preloads only match the backdrop request at the backdrop's size
+        final ImageView backdrop = findViewById(R.id.backdrop);
+        if (backdrop.getWidth() == 0 || backdrop.getHeight() == 0) {
+
+            return;
+
+        }
+        for (int i = 0; i < ids.size(); i++) {
+
+            if (mPhotoPreloads.get(ids.get(i)) == null) {
+
+                mPhotoPreloads.put(ids.get(i), ArticleImages.photo(glide, photoUrls.get(i))
+                        .apply(RequestOptions.priorityOf(Priority.LOW))
+                        .preload(backdrop.getWidth(), backdrop.getHeight()));
+
+            }
+
+        }
+
+    }
+
     @NonNull
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
@@ -142,18 +319,12 @@ public class ArticleDetailActivity extends AppCompatActivity
         // Select the start ID
         if (mStartId > 0) {
 
-            mCursor.moveToFirst();
-            // TODO: optimize
-            while (!mCursor.isAfterLast()) {
+            Bundle result = getContentResolver().call(ItemsContract.Items.buildDirUri(),
+                    ItemsContract.METHOD_GET_POSITION, Long.toString(mStartId), null);
+            int position = (result != null) ? result.getInt(ItemsContract.EXTRA_POSITION, -1) : -1;
+            if (position >= 0 && position < mCursor.getCount()) {
 
-                if (mCursor.getLong(ArticleLoader.Query._ID) == mStartId) {
-
-                    final int position = mCursor.getPosition();
-                    mPager.setCurrentItem(position, false);
-                    break;
-
-                }
-                mCursor.moveToNext();
+                mPager.setCurrentItem(position, false);
 
             }
             mStartId = 0;
@@ -170,6 +341,42 @@ public class ArticleDetailActivity extends AppCompatActivity
 
     }
 
+    /**
+     * Logs how long after its page was selected the backdrop photo was ready, and where it came
+     * from. Debug builds only.
+     */
+    private static class PhotoTimingListener implements RequestListener<Drawable> {
+
+        private final long mId;
+        private final long mSelectedAt;
+
+        PhotoTimingListener(long id, long selectedAt) {
+
+            mId = id;
+            mSelectedAt = selectedAt;
+
+        }
+
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                    Target<Drawable> target, boolean isFirstResource) {
+
+            return false;
+
+        }
+
+        @Override
+        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                       DataSource dataSource, boolean isFirstResource) {
+
+            Log.d(TAG, "Photo of " + mId + " after " +
+                    (SystemClock.elapsedRealtime() - mSelectedAt) + " ms from " + dataSource);
+            return false;
+
+        }
+
+    }
+
     private class MyPagerAdapter extends FragmentStatePagerAdapter {
 
         MyPagerAdapter(FragmentManager fm) {
@@ -1,46 +1,49 @@
 package com.example.xyzreader.ui;
 
-import android.database.Cursor;
+import android.content.Context;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.Loader;
+import android.support.v4.util.LruCache;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.text.format.DateUtils;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.example.xyzreader.R;
-import com.example.xyzreader.data.ArticleLoader;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * A fragment representing a single Article detail screen. This fragment is
  * either contained in a {@link ArticleListActivity} in two-pane mode (on
  * tablets) or a {@link ArticleDetailActivity} on handsets.
  */
-public class ArticleDetailFragment extends Fragment
-        implements LoaderManager.LoaderCallbacks<Cursor> {
+public class ArticleDetailFragment extends Fragment implements ArticleStore.Listener {
 
-    private static final String TAG = "ArticleDetailFragment";
     private static final String ARG_ITEM_ID = "item_id";
-    private Cursor mCursor;
+    private static final int VIEW_TYPE_HEADER = 0;
+    private static final int VIEW_TYPE_PARAGRAPH = 1;
+    // Paragraphs are read in pages of this size as the body scrolls into view
+    private static final int PAGE_SIZE = ArticleStore.FIRST_PARAGRAPHS;
+    // Pages held by the body adapter, whatever scrolled further away is read again if needed
+    private static final int MAX_PAGES = 8;
+    private ArticleStore mStore;
+    private ArticleStore.Article mArticle;
+    private BodyAdapter mBodyAdapter;
     private long mItemId;
     private View mRootView;
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.sss");
     // Use default locale format
     private final SimpleDateFormat outputFormat = new SimpleDateFormat();
     // Most time functions can only handle 1902 - 2037
-    private final GregorianCalendar START_OF_EPOCH = new GregorianCalendar(2, 1, 1);
+    private static final long START_OF_EPOCH = new GregorianCalendar(2, 1, 1).getTimeInMillis();
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -75,10 +78,18 @@ public class ArticleDetailFragment extends Fragment
     }
 
     @Override
-    public void onActivityCreated(Bundle savedInstanceState) {
+    public void onAttach(Context context) {
 
-        super.onActivityCreated(savedInstanceState);
-        getLoaderManager().initLoader(0, null, this);
+        super.onAttach(context);
+        mStore = ((ArticleStore.Owner) context).getArticleStore();
+
+    }
+
+    @Override
+    public void onDetach() {
+
+        super.onDetach();
+        mStore = null;
 
     }
 
@@ -87,27 +98,36 @@ public class ArticleDetailFragment extends Fragment
                              Bundle savedInstanceState) {
 
         mRootView = inflater.inflate(R.layout.fragment_article_detail, container, false);
+        RecyclerView bodyView = mRootView.findViewById(R.id.body_recycler_view);
+        bodyView.setLayoutManager(new LinearLayoutManager(getContext()));
+        if (mBodyAdapter == null) {
+
+            mBodyAdapter = new BodyAdapter();
+
+        }
+        bodyView.setAdapter(mBodyAdapter);
         bindViews();
+        // Binds right away when the article was prefetched
+        mStore.addListener(mItemId, this);
 
         return mRootView;
 
     }
 
-    private Date parsePublishedDate() {
-
-        try {
+    @Override
+    public void onDestroyView() {
 
-            String date = mCursor.getString(ArticleLoader.Query.PUBLISHED_DATE);
-            return dateFormat.parse(date);
+        super.onDestroyView();
+        mStore.removeListener(mItemId, this);
+        mRootView = null;
 
-        }
-        catch (ParseException ex) {
+    }
 
-            Log.e(TAG, ex.getMessage());
-            Log.i(TAG, "passing today's date");
-            return new Date();
+    @Override
+    public void onArticleLoaded(ArticleStore.Article article) {
 
-        }
+        mBodyAdapter.setArticle(article);
+        bindViews();
 
     }
 
@@ -119,40 +139,9 @@ public class ArticleDetailFragment extends Fragment
 
         }
 
-        TextView titleView = mRootView.findViewById(R.id.article_title);
-        TextView bylineView = mRootView.findViewById(R.id.article_byline);
-        RecyclerView bodyView = mRootView.findViewById(R.id.body_recycler_view);
-
-        if (mCursor != null) {
-            titleView.setText(mCursor.getString(ArticleLoader.Query.TITLE));
-            Date publishedDate = parsePublishedDate();
-            if (!publishedDate.before(START_OF_EPOCH.getTime())) {
+        if (mArticle != null) {
 
-                bylineView.setText(getString(R.string.byline_placeholder, DateUtils
-                                .getRelativeTimeSpanString(publishedDate.getTime(),
-                                        System.currentTimeMillis(), DateUtils.HOUR_IN_MILLIS,
-                                        DateUtils.FORMAT_ABBREV_ALL).toString(),
-                        mCursor.getString(ArticleLoader.Query.AUTHOR)));
-
-            }
-            else {
-
-                // If date is before 1902, just show the string
-                bylineView.setText(
-                        getString(R.string.byline_placeholder, outputFormat.format(publishedDate),
-                                mCursor.getString(ArticleLoader.Query.AUTHOR)));
-
-            }
-            String bodyText =
-                    mCursor.getString(ArticleLoader.Query.BODY).replace("\r\n\r\n", "\n\n");
-            bodyText = bodyText.replace("\r\n    ", "\n    ");
-            bodyText = bodyText.replace("\r\n", " ");
-            LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
-            bodyView.setLayoutManager(layoutManager);
-            String[] text = bodyText.split("\n\n");
-            BodyAdapter adapter = new BodyAdapter(text);
-            bodyView.setAdapter(adapter);
-            mRootView.findViewById(R.id.scrollview).setVisibility(View.VISIBLE);
+            mRootView.findViewById(R.id.body_recycler_view).setVisibility(View.VISIBLE);
             mRootView.findViewById(R.id.progress_bar).setVisibility(View.GONE);
 
         }
@@ -164,78 +153,169 @@ public class ArticleDetailFragment extends Fragment
 
     }
 
-    @NonNull
-    @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    private void bindHeader(HeaderViewHolder holder) {
+
+        holder.titleView.setText(mArticle.title);
+        long publishedDate = mArticle.publishedDate;
+        if (publishedDate >= START_OF_EPOCH) {
+
+            holder.bylineView.setText(getString(R.string.byline_placeholder, DateUtils
+                            .getRelativeTimeSpanString(publishedDate, System.currentTimeMillis(),
+                                    DateUtils.HOUR_IN_MILLIS, DateUtils.FORMAT_ABBREV_ALL)
+                            .toString(), mArticle.author));
+
+        }
+        else {
 
-        return ArticleLoader.newInstanceForItemId(getActivity(), mItemId);
+            // If date is before 1902, just show the string
+            holder.bylineView.setText(
+                    getString(R.string.byline_placeholder,
+                            outputFormat.format(new Date(publishedDate)), mArticle.author));
+
+        }
 
     }
 
-    @Override
-    public void onLoadFinished(@NonNull Loader<Cursor> cursorLoader, Cursor cursor) {
+    /**
+     * The article header followed by its paragraphs. Only the first page of paragraphs comes
+     * with the article, later pages are read from the store when they are about to be shown
+     * and a bounded number of them is kept.
+     */
+    private class BodyAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-        if (!isAdded()) {
+        private final LruCache<Integer, String[]> mPages = new LruCache<>(MAX_PAGES);
+        private final Set<Integer> mRequestedPages = new HashSet<>();
 
-            if (cursor != null) {
+        void setArticle(ArticleStore.Article article) {
 
-                cursor.close();
+            if (isSameContent(mArticle, article)) {
+
+                // Delivered again, such as when the view is recreated: keep the pages read
+                return;
 
             }
-            return;
+            mArticle = article;
+            mPages.evictAll();
+            mRequestedPages.clear();
+            mPages.put(0, article.paragraphs);
+            notifyDataSetChanged();
 
         }
 
-        mCursor = cursor;
-        if (mCursor != null && !mCursor.moveToFirst()) {
+        private boolean isSameContent(ArticleStore.Article shown, ArticleStore.Article article) {
 
-            Log.e(TAG, "Error reading item detail cursor");
-            mCursor.close();
-            mCursor = null;
+            return shown != null && shown.id == article.id && (shown == article ||
+                    (article.contentHash != null && article.contentHash.equals(shown.contentHash)));
 
         }
 
-        bindViews();
+        /**
+         * Return a page of paragraphs if it is at hand, requesting it from the store otherwise.
+         */
+        private String[] getPage(final int page) {
 
-    }
+            final String[] paragraphs = mPages.get(page);
+            if (paragraphs != null || mStore == null ||
+                    page * PAGE_SIZE >= mArticle.paragraphCount || !mRequestedPages.add(page)) {
 
-    @Override
-    public void onLoaderReset(@NonNull Loader<Cursor> cursorLoader) {
+                return paragraphs;
 
-        mCursor = null;
-        bindViews();
+            }
 
-    }
+            final ArticleStore.Article article = mArticle;
+            mStore.loadParagraphs(article.id, page * PAGE_SIZE, PAGE_SIZE,
+                    new ArticleStore.ParagraphsCallback() {
+
+                        @Override
+                        public void onParagraphsLoaded(int from, String[] paragraphs) {
+
+                            if (article != mArticle) {
+
+                                return;
 
-    private class BodyAdapter extends RecyclerView.Adapter<ViewHolder> {
+                            }
+                            mRequestedPages.remove(page);
+                            if (paragraphs != null) {
 
-        private String[] text;
+                                mPages.put(page, paragraphs);
+                                notifyItemRangeChanged(1 + from, paragraphs.length);
 
-        BodyAdapter(String[] text) {
+                            }
 
-            this.text = text;
+                        }
+
+                    });
+            return null;
+
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+
+            return (position == 0) ? VIEW_TYPE_HEADER : VIEW_TYPE_PARAGRAPH;
 
         }
 
         @NonNull
         @Override
-        public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent,
+                                                          int viewType) {
+
+            if (viewType == VIEW_TYPE_HEADER) {
 
+                View view = getLayoutInflater().inflate(R.layout.list_item_article_header,
+                        parent, false);
+                return new HeaderViewHolder(view);
+
+            }
             View view = getLayoutInflater().inflate(R.layout.list_item_body_text, parent, false);
             return new ViewHolder(view);
 
         }
 
         @Override
-        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+
+            if (position == 0) {
+
+                bindHeader((HeaderViewHolder) holder);
+                return;
+
+            }
+
+            final int index = position - 1;
+            final String[] paragraphs = getPage(index / PAGE_SIZE);
+            final int offset = index % PAGE_SIZE;
+            ((ViewHolder) holder).body.setText(
+                    (paragraphs != null && offset < paragraphs.length) ? paragraphs[offset] : null);
+            if (offset >= PAGE_SIZE / 2) {
+
+                // Halfway through a page, have the next one ready before it scrolls in
+                getPage(index / PAGE_SIZE + 1);
+
+            }
 
-            holder.body.setText(text[position]);
         }
 
         @Override
         public int getItemCount() {
 
-            return text.length;
+            return (mArticle != null) ? 1 + mArticle.paragraphCount : 0;
+
+        }
+
+    }
+
+    static class HeaderViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView titleView;
+        final TextView bylineView;
+
+        HeaderViewHolder(View view) {
+
+            super(view);
+            titleView = view.findViewById(R.id.article_title);
+            bylineView = view.findViewById(R.id.article_byline);
 
         }
 
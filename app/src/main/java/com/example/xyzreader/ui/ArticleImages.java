@@ -0,0 +1,91 @@
+package com.example.xyzreader.ui;
+
+import android.database.Cursor;
+import android.graphics.drawable.Drawable;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
+import com.bumptech.glide.request.RequestOptions;
+import com.example.xyzreader.data.ArticleLoader;
+
+/**
+ * Image requests shared between the list and the detail screens. Glide only reuses a decoded
+ * image for a request with the same model, size and options, so every screen that wants to hit
+ * the grid's thumbnails must build them here.
+ */
+final class ArticleImages {
+
+    // Width over height of a thumbnail whose stored ratio is unusable
+    private static final float DEFAULT_ASPECT_RATIO = 1.5f;
+
+    private ArticleImages() {
+
+    }
+
+    /**
+     * The width over height of the thumbnail of the article at the cursor's position. Grid
+     * cells are sized by it, so any request that wants to match a grid thumbnail must be too.
+     * The cursor must be read with {@link ArticleLoader.Query}.
+     */
+    static float aspectRatio(Cursor cursor) {
+
+        final float aspectRatio = cursor.getFloat(ArticleLoader.Query.ASPECT_RATIO);
+        return (aspectRatio > 0) ? aspectRatio : DEFAULT_ASPECT_RATIO;
+
+    }
+
+    /**
+     * The colour stored for the article at the cursor's position to show until its images
+     * load, or {@code fallback} if none was computed yet. The cursor must be read with
+     * {@link ArticleLoader.Query}.
+     */
+    static int placeholderColor(Cursor cursor, int fallback) {
+
+        return cursor.isNull(ArticleLoader.Query.PLACEHOLDER_COLOR) ? fallback :
+                cursor.getInt(ArticleLoader.Query.PLACEHOLDER_COLOR);
+
+    }
+
+    /**
+     * A grid thumbnail. Thumbnails are small enough that RGB_565 looks the same and halves
+     * their memory.
+     */
+    static RequestBuilder<Drawable> thumbnail(RequestManager glide, String thumbUrl) {
+
+        return glide.load(thumbUrl).apply(
+                RequestOptions.centerCropTransform().format(DecodeFormat.PREFER_RGB_565));
+
+    }
+
+    /**
+     * A full photo, for a centre-cropped view. Preloads of the backdrop use this directly.
+     */
+    static RequestBuilder<Drawable> photo(RequestManager glide, String photoUrl) {
+
+        return glide.load(photoUrl).apply(RequestOptions.centerCropTransform());
+
+    }
+
+    /**
+     * A full photo that shows the article's thumbnail until it is ready. Given the pixel size
+     * the grid decoded the thumbnail at, the thumbnail comes straight from the memory cache
+     * when the grid showed it; otherwise, or with a size of 0, it is loaded like any other
+     * image and still usually arrives well before the photo.
+     */
+    static RequestBuilder<Drawable> photo(RequestManager glide, String photoUrl, String thumbUrl,
+                                          int thumbWidth, int thumbHeight) {
+
+        RequestBuilder<Drawable> thumbnail = thumbnail(glide, thumbUrl);
+        if (thumbWidth > 0 && thumbHeight > 0) {
+
+            thumbnail = thumbnail.apply(RequestOptions.overrideOf(thumbWidth, thumbHeight));
+
+        }
+        return photo(glide, photoUrl).thumbnail(thumbnail)
+                                     .transition(DrawableTransitionOptions.withCrossFade());
+
+    }
+
+}
@@ -7,7 +7,10 @@ import android.content.IntentFilter;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.app.LoaderManager;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
@@ -17,21 +20,27 @@ import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
 import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
+import com.bumptech.glide.request.target.DrawableImageViewTarget;
+import com.bumptech.glide.util.ViewPreloadSizeProvider;
+import com.example.xyzreader.BuildConfig;
 import com.example.xyzreader.R;
 import com.example.xyzreader.data.ArticleLoader;
 import com.example.xyzreader.data.ArticleLoader.Query;
 import com.example.xyzreader.data.ItemsContract;
 import com.example.xyzreader.data.UpdaterService;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 /**
  * An activity representing a list of Articles. This activity has different presentations for
@@ -42,14 +51,28 @@ import java.util.GregorianCalendar;
 public class ArticleListActivity extends AppCompatActivity
         implements LoaderManager.LoaderCallbacks<Cursor> {
 
-    private static final String TAG = ArticleListActivity.class.toString();
+    private static final String TAG = "ArticleListActivity";
+    // The list is loaded in pages of this size, each by its own loader whose id is the page index
+    private static final int PAGE_SIZE = 40;
+    // Binding an item this close to the end of the loaded pages requests the next page
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final String ARG_BEFORE_PUBLISHED_DATE = "before_published_date";
+    private static final String ARG_BEFORE_ID = "before_id";
+    private static final int COLUMN_COUNT = 2;
+    // Thumbnails fetched and decoded ahead of the scroll direction
+    private static final int MAX_PRELOAD = 2 * COLUMN_COUNT * 3;
+
     private SwipeRefreshLayout mSwipeRefreshLayout;
     private RecyclerView mRecyclerView;
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.sss");
+    private Adapter mAdapter;
+    private final ViewPreloadSizeProvider<String> mThumbnailWidth =
+            new ViewPreloadSizeProvider<>();
+    private int mRequestedPageCount;
+    private int mDefaultPlaceholderColor;
     // Use default locale format
     private final SimpleDateFormat outputFormat = new SimpleDateFormat();
     // Most time functions can only handle 1902 - 2037
-    private final GregorianCalendar START_OF_EPOCH = new GregorianCalendar(2, 1, 1);
+    private static final long START_OF_EPOCH = new GregorianCalendar(2, 1, 1).getTimeInMillis();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -58,8 +81,20 @@ public class ArticleListActivity extends AppCompatActivity
         setContentView(R.layout.activity_article_list);
 
         mSwipeRefreshLayout = findViewById(R.id.swipe_refresh_layout);
+        mDefaultPlaceholderColor = ContextCompat.getColor(this, R.color.photo_placeholder);
 
         mRecyclerView = findViewById(R.id.recycler_view);
+        mAdapter = new Adapter();
+        mAdapter.setHasStableIds(true);
+        mRecyclerView.setAdapter(mAdapter);
+        StaggeredGridLayoutManager layoutManager =
+                new StaggeredGridLayoutManager(COLUMN_COUNT, StaggeredGridLayoutManager.VERTICAL);
+        mRecyclerView.setLayoutManager(layoutManager);
+        mRecyclerView.addOnScrollListener(new PreloadScrollListener(layoutManager,
+                new ListPreloader<>(Glide.with(this), new ThumbnailPreloadProvider(),
+                        new ThumbnailSizeProvider(), MAX_PRELOAD)));
+
+        mRequestedPageCount = 1;
         getSupportLoaderManager().initLoader(0, null, this);
 
         if (savedInstanceState == null) {
@@ -90,6 +125,11 @@ public class ArticleListActivity extends AppCompatActivity
 
         super.onStop();
         unregisterReceiver(mRefreshingReceiver);
+        if (BuildConfig.DEBUG) {
+
+            Log.d(TAG, "Image cache hits: " + XyzReaderGlideModule.CacheStats.summary());
+
+        }
 
     }
 
@@ -118,48 +158,169 @@ public class ArticleListActivity extends AppCompatActivity
 
     @NonNull
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public Loader<Cursor> onCreateLoader(int page, Bundle bundle) {
+
+        if (bundle == null) {
+
+            return ArticleLoader.newFirstPageInstance(this, PAGE_SIZE);
 
-        return ArticleLoader.newAllArticlesInstance(this);
+        }
+        return ArticleLoader.newPageInstance(this, bundle.getLong(ARG_BEFORE_PUBLISHED_DATE),
+                bundle.getLong(ARG_BEFORE_ID), PAGE_SIZE);
 
     }
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> cursorLoader, Cursor cursor) {
 
-        Adapter adapter = new Adapter(cursor, this);
-        adapter.setHasStableIds(true);
-        mRecyclerView.setAdapter(adapter);
-        StaggeredGridLayoutManager layoutManager =
-                new StaggeredGridLayoutManager(2, StaggeredGridLayoutManager.VERTICAL);
-        mRecyclerView.setLayoutManager(layoutManager);
+        final int page = cursorLoader.getId();
+        if (page >= mRequestedPageCount) {
+
+            return;
+
+        }
+
+        mAdapter.setPage(page, cursor);
+        if (cursor.getCount() < PAGE_SIZE) {
+
+            // This is the end of the list now, anything after it is stale
+            mAdapter.truncate(page + 1);
+            for (int i = page + 1; i < mRequestedPageCount; i++) {
+
+                getSupportLoaderManager().destroyLoader(i);
+
+            }
+            mRequestedPageCount = page + 1;
+
+        }
+        else if (page + 1 < mRequestedPageCount) {
+
+            // The next page starts after this one's last article, which may have moved
+            final Bundle next = pageArgs(cursor);
+            final Loader<Cursor> nextLoader = getSupportLoaderManager().getLoader(page + 1);
+            if (nextLoader == null || !((CursorLoader) nextLoader).getUri().equals(
+                    ItemsContract.Items.buildPageUri(next.getLong(ARG_BEFORE_PUBLISHED_DATE),
+                            next.getLong(ARG_BEFORE_ID), PAGE_SIZE))) {
+
+                getSupportLoaderManager().restartLoader(page + 1, next, this);
+
+            }
+
+        }
 
     }
 
     @Override
     public void onLoaderReset(@NonNull Loader<Cursor> loader) {
 
-        mRecyclerView.setAdapter(null);
+        mAdapter.truncate(loader.getId());
+
+    }
+
+    /**
+     * Start loading the page after the last loaded one, unless one is already loading or the
+     * end of the list has been reached.
+     */
+    private void loadNextPage() {
+
+        final Cursor lastPage = mAdapter.getLastPage();
+        if (mAdapter.getPageCount() < mRequestedPageCount || lastPage == null ||
+                lastPage.getCount() < PAGE_SIZE) {
+
+            return;
+
+        }
+
+        final int page = mRequestedPageCount++;
+        final Bundle args = pageArgs(lastPage);
+        // Not from inside a bind pass
+        mRecyclerView.post(new Runnable() {
+
+            @Override
+            public void run() {
+
+                getSupportLoaderManager().initLoader(page, args, ArticleListActivity.this);
+
+            }
+
+        });
+
+    }
+
+    private static Bundle pageArgs(Cursor page) {
+
+        page.moveToLast();
+        final Bundle args = new Bundle();
+        args.putLong(ARG_BEFORE_PUBLISHED_DATE, page.getLong(ArticleLoader.Query.PUBLISHED_DATE));
+        args.putLong(ARG_BEFORE_ID, page.getLong(ArticleLoader.Query._ID));
+        return args;
 
     }
 
+    /**
+     * Adapter over the loaded pages. Every page but the last holds exactly {@link #PAGE_SIZE}
+     * articles, so a position maps straight to its page.
+     */
     private class Adapter extends RecyclerView.Adapter<ViewHolder> {
 
-        private final Cursor mCursor;
-        private final Context context;
+        private final ArrayList<Cursor> mPages = new ArrayList<>();
+
+        void setPage(int page, Cursor cursor) {
+
+            if (page < mPages.size()) {
+
+                mPages.set(page, cursor);
+
+            }
+            else {
+
+                mPages.add(cursor);
+
+            }
+            notifyDataSetChanged();
+
+        }
+
+        void truncate(int pageCount) {
+
+            if (mPages.size() <= pageCount) {
+
+                return;
+
+            }
+            while (mPages.size() > pageCount) {
+
+                mPages.remove(mPages.size() - 1);
+
+            }
+            notifyDataSetChanged();
+
+        }
+
+        int getPageCount() {
+
+            return mPages.size();
+
+        }
 
-        Adapter(Cursor cursor, Context context) {
+        Cursor getLastPage() {
 
-            mCursor = cursor;
-            this.context = context;
+            return mPages.isEmpty() ? null : mPages.get(mPages.size() - 1);
+
+        }
+
+        private Cursor moveTo(int position) {
+
+            final Cursor page = mPages.get(position / PAGE_SIZE);
+            page.moveToPosition(position % PAGE_SIZE);
+            return page;
 
         }
 
         @Override
         public long getItemId(int position) {
 
-            mCursor.moveToPosition(position);
-            return mCursor.getLong(ArticleLoader.Query._ID);
+            return moveTo(position).getLong(ArticleLoader.Query._ID);
 
         }
 
@@ -169,13 +330,18 @@ public class ArticleListActivity extends AppCompatActivity
 
             View view = getLayoutInflater().inflate(R.layout.list_item_article, parent, false);
             final ViewHolder vh = new ViewHolder(view);
+            // All cells share one thumbnail width, the first one laid out tells the preloader
+            mThumbnailWidth.setView(vh.thumbnailView);
             view.setOnClickListener(new View.OnClickListener() {
 
                 @Override
                 public void onClick(View view) {
 
+                    // The detail backdrop starts from the thumbnail decoded at this size
                     startActivity(new Intent(Intent.ACTION_VIEW,
-                            ItemsContract.Items.buildItemUri(getItemId(vh.getAdapterPosition()))));
+                            ItemsContract.Items.buildItemUri(getItemId(vh.getAdapterPosition())))
+                            .putExtra(ArticleDetailActivity.EXTRA_THUMBNAIL_WIDTH,
+                                    vh.thumbnailView.getWidth()));
 
                 }
 
@@ -184,55 +350,161 @@ public class ArticleListActivity extends AppCompatActivity
 
         }
 
-        private Date parsePublishedDate() {
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+
+            if (position >= getItemCount() - PREFETCH_DISTANCE) {
+
+                loadNextPage();
+
+            }
 
-            try {
+            final Cursor cursor = moveTo(position);
+            holder.titleView.setText(cursor.getString(ArticleLoader.Query.TITLE));
+            long publishedDate = cursor.getLong(ArticleLoader.Query.PUBLISHED_DATE);
+            if (publishedDate >= START_OF_EPOCH) {
 
-                String date = mCursor.getString(ArticleLoader.Query.PUBLISHED_DATE);
-                return dateFormat.parse(date);
+                holder.subtitleView.setText(getString(R.string.byline_placeholder_linebreak,
+                        DateUtils.getRelativeTimeSpanString(publishedDate,
+                                System.currentTimeMillis(), DateUtils.HOUR_IN_MILLIS,
+                                DateUtils.FORMAT_ABBREV_ALL).toString(),
+                        cursor.getString(ArticleLoader.Query.AUTHOR)));
 
             }
-            catch (ParseException ex) {
+            else {
 
-                Log.e(TAG, ex.getMessage());
-                Log.i(TAG, "passing today's date");
-                return new Date();
+                holder.subtitleView.setText(getString(R.string.byline_placeholder_linebreak,
+                        outputFormat.format(new Date(publishedDate)),
+                        cursor.getString(ArticleLoader.Query.AUTHOR)));
 
             }
+            // Sized before the image arrives, so loading it does not move the grid around
+            holder.thumbnailView.setAspectRatio(getAspectRatio(position));
+            holder.thumbnailView.setBackgroundColor(
+                    ArticleImages.placeholderColor(cursor, mDefaultPlaceholderColor));
+            // Decoded at the measured size of the view, preloads use the same request. A
+            // recycled view still has the height of its last article until the layout above
+            // runs, so the size is read after it.
+            ArticleImages.thumbnail(Glide.with(ArticleListActivity.this),
+                    cursor.getString(Query.THUMB_URL))
+                    .transition(DrawableTransitionOptions.withCrossFade())
+                    .into(new DrawableImageViewTarget(holder.thumbnailView).waitForLayout());
+
+        }
+
+        float getAspectRatio(int position) {
+
+            return ArticleImages.aspectRatio(moveTo(position));
 
         }
 
         @Override
-        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        public int getItemCount() {
 
-            mCursor.moveToPosition(position);
-            holder.titleView.setText(mCursor.getString(ArticleLoader.Query.TITLE));
-            Date publishedDate = parsePublishedDate();
-            if (!publishedDate.before(START_OF_EPOCH.getTime())) {
+            final Cursor lastPage = getLastPage();
+            return (lastPage != null) ? (mPages.size() - 1) * PAGE_SIZE + lastPage.getCount() : 0;
 
-                holder.subtitleView.setText(getString(R.string.byline_placeholder_linebreak,
-                        DateUtils.getRelativeTimeSpanString(publishedDate.getTime(),
-                                System.currentTimeMillis(), DateUtils.HOUR_IN_MILLIS,
-                                DateUtils.FORMAT_ABBREV_ALL).toString(),
-                        mCursor.getString(ArticleLoader.Query.AUTHOR)));
+        }
+
+    }
+
+    private class ThumbnailPreloadProvider implements ListPreloader.PreloadModelProvider<String> {
+
+        @NonNull
+        @Override
+        public List<String> getPreloadItems(int position) {
+
+            if (position >= mAdapter.getItemCount()) {
+
+                return Collections.emptyList();
 
             }
-            else {
+            return Collections.singletonList(
+                    mAdapter.moveTo(position).getString(Query.THUMB_URL));
 
-                holder.subtitleView.setText(getString(R.string.byline_placeholder_linebreak,
-                        outputFormat.format(publishedDate),
-                        mCursor.getString(ArticleLoader.Query.AUTHOR)));
+        }
+
+        @Nullable
+        @Override
+        public RequestBuilder<?> getPreloadRequestBuilder(@NonNull String url) {
+
+            return ArticleImages.thumbnail(Glide.with(ArticleListActivity.this), url);
+
+        }
+
+    }
+
+    /**
+     * Preload sizes matching the cells: the width all thumbnails share, and the height the
+     * article's aspect ratio gives the view at that width.
+     */
+    private class ThumbnailSizeProvider implements ListPreloader.PreloadSizeProvider<String> {
+
+        @Nullable
+        @Override
+        public int[] getPreloadSize(@NonNull String url, int adapterPosition,
+                                    int perItemPosition) {
+
+            final int[] size = mThumbnailWidth.getPreloadSize(url, adapterPosition,
+                    perItemPosition);
+            if (size == null) {
+
+                return null;
 
             }
-            Glide.with(context).load(mCursor.getString(Query.PHOTO_URL))
-                 .transition(DrawableTransitionOptions.withCrossFade()).into(holder.thumbnailView);
+            size[1] = AspectRatioImageView.heightFor(size[0],
+                    mAdapter.getAspectRatio(adapterPosition));
+            return size;
+
+        }
+
+    }
+
+    /**
+     * Feeds the visible range of the staggered grid to a {@link ListPreloader}. Glide's own
+     * RecyclerViewPreloader only understands a LinearLayoutManager.
+     */
+    private static class PreloadScrollListener extends RecyclerView.OnScrollListener {
+
+        private final StaggeredGridLayoutManager mLayoutManager;
+        private final ListPreloader<String> mPreloader;
+        private final int[] mSpanPositions;
+
+        PreloadScrollListener(StaggeredGridLayoutManager layoutManager,
+                              ListPreloader<String> preloader) {
+
+            mLayoutManager = layoutManager;
+            mPreloader = preloader;
+            mSpanPositions = new int[layoutManager.getSpanCount()];
 
         }
 
         @Override
-        public int getItemCount() {
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
 
-            return mCursor.getCount();
+            int first = Integer.MAX_VALUE;
+            for (int position : mLayoutManager.findFirstVisibleItemPositions(mSpanPositions)) {
+
+                if (position != RecyclerView.NO_POSITION) {
+
+                    first = Math.min(first, position);
+
+                }
+
+            }
+            int last = RecyclerView.NO_POSITION;
+            for (int position : mLayoutManager.findLastVisibleItemPositions(mSpanPositions)) {
+
+                last = Math.max(last, position);
+
+            }
+            if (last == RecyclerView.NO_POSITION) {
+
+                return;
+
+            }
+            mPreloader.onScroll(null, first, last - first + 1,
+                    recyclerView.getAdapter().getItemCount());
 
         }
 
@@ -240,7 +512,7 @@ public class ArticleListActivity extends AppCompatActivity
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
 
-        final ImageView thumbnailView;
+        final AspectRatioImageView thumbnailView;
         final TextView titleView;
         final TextView subtitleView;
 
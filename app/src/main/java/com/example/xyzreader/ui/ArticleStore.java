@@ -0,0 +1,453 @@
+package com.example.xyzreader.ui;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LongSparseArray;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.example.xyzreader.data.ArticleLoader;
+import com.example.xyzreader.data.ItemsContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded in-memory store of the articles shown by {@link ArticleDetailActivity}. Articles are
+ * read on one background thread, either on request or ahead of time through
+ * {@link #prefetch(List)}, so that a page swiped to can usually bind straight from memory.
+ * Only the opening paragraphs of an article are kept, the rest is read by range through
+ * {@link #loadParagraphs}. Everything but loading runs on the main thread.
+ */
+class ArticleStore {
+
+    private static final String TAG = "ArticleStore";
+    // Roughly the characters of text kept, a few MB of memory
+    private static final int MAX_SIZE = 1024 * 1024;
+    // Paragraphs read with the article, enough to fill the first screen
+    static final int FIRST_PARAGRAPHS = 20;
+
+    interface Owner {
+
+        ArticleStore getArticleStore();
+
+    }
+
+    interface Listener {
+
+        /**
+         * Called on the main thread with the current version of an article.
+         */
+        void onArticleLoaded(Article article);
+
+    }
+
+    interface ParagraphsCallback {
+
+        /**
+         * Called on the main thread with the paragraphs read from {@code from} on, or
+         * {@code null} if they could not be read.
+         */
+        void onParagraphsLoaded(int from, String[] paragraphs);
+
+    }
+
+    static class Article {
+
+        final long id;
+        final String title;
+        final String author;
+        final long publishedDate;
+        final String photoUrl;
+        final int paragraphCount;
+        // The first paragraphs only, up to FIRST_PARAGRAPHS
+        final String[] paragraphs;
+        // Changes whenever any of the above does
+        final String contentHash;
+
+        Article(long id, String title, String author, long publishedDate, String photoUrl,
+                int paragraphCount, String[] paragraphs, String contentHash) {
+
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.publishedDate = publishedDate;
+            this.photoUrl = photoUrl;
+            this.paragraphCount = paragraphCount;
+            this.paragraphs = paragraphs;
+            this.contentHash = contentHash;
+
+        }
+
+        int size() {
+
+            int size = length(title) + length(author) + length(photoUrl);
+            for (String paragraph : paragraphs) {
+
+                size += length(paragraph);
+
+            }
+            return Math.max(size, 1);
+
+        }
+
+        private static int length(String text) {
+
+            return (text != null) ? text.length() : 0;
+
+        }
+
+    }
+
+    interface ParagraphQuery {
+
+        String[] PROJECTION = {ItemsContract.Paragraphs.TEXT,};
+        int TEXT = 0;
+
+    }
+
+    private final ContentResolver mResolver;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Long, Article> mCache = new LruCache<Long, Article>(MAX_SIZE) {
+
+        @Override
+        protected int sizeOf(Long key, Article article) {
+
+            return article.size();
+
+        }
+
+    };
+    private final LongSparseArray<List<Listener>> mListeners = new LongSparseArray<>();
+    private final Set<Long> mPending = new HashSet<>();
+    // Bumped on every content change, loads started before that are dropped
+    private int mGeneration;
+    // Articles the owner wants prefetched right now, read by the loading thread
+    private volatile Set<Long> mPrefetchWindow = Collections.emptySet();
+
+    private final ContentObserver mObserver = new ContentObserver(mHandler) {
+
+        @Override
+        public void onChange(boolean selfChange) {
+
+            // Most changes leave these articles alone, such as a new placeholder colour. They
+            // are checked against their rows and only the changed ones are read and delivered.
+            mGeneration++;
+            mPending.clear();
+            final Set<Long> ids = new HashSet<>(mCache.snapshot().keySet());
+            for (int i = 0; i < mListeners.size(); i++) {
+
+                ids.add(mListeners.keyAt(i));
+
+            }
+            for (long id : ids) {
+
+                enqueue(id, false);
+
+            }
+
+        }
+
+    };
+
+    ArticleStore(ContentResolver resolver) {
+
+        mResolver = resolver;
+        mResolver.registerContentObserver(ItemsContract.Items.buildDirUri(), true, mObserver);
+
+    }
+
+    /**
+     * Deliver the article to the listener now if it is in memory, and again whenever it
+     * changes, until the listener is removed.
+     */
+    void addListener(long id, Listener listener) {
+
+        List<Listener> listeners = mListeners.get(id);
+        if (listeners == null) {
+
+            listeners = new ArrayList<>(1);
+            mListeners.put(id, listeners);
+
+        }
+        listeners.add(listener);
+
+        final Article article = mCache.get(id);
+        if (article != null) {
+
+            listener.onArticleLoaded(article);
+
+        }
+        else {
+
+            enqueue(id, false);
+
+        }
+
+    }
+
+    void removeListener(long id, Listener listener) {
+
+        final List<Listener> listeners = mListeners.get(id);
+        if (listeners != null) {
+
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+
+                mListeners.remove(id);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Make {@code ids} the prefetch window: load the ones not in memory yet in the given order,
+     * and skip queued prefetches of articles that have left the window since.
+     */
+    void prefetch(List<Long> ids) {
+
+        mPrefetchWindow = new HashSet<>(ids);
+        for (long id : ids) {
+
+            if (mCache.get(id) == null) {
+
+                enqueue(id, true);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Read up to {@code count} paragraphs of an article from position {@code from} on. Nothing
+     * is kept in the store, the caller decides what to hold on to.
+     */
+    void loadParagraphs(final long id, final int from, final int count,
+                        final ParagraphsCallback callback) {
+
+        mExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                final String[] paragraphs = queryParagraphs(id, from, count);
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        callback.onParagraphsLoaded(from, paragraphs);
+
+                    }
+
+                });
+
+            }
+
+        });
+
+    }
+
+    void close() {
+
+        mResolver.unregisterContentObserver(mObserver);
+        mExecutor.shutdownNow();
+        mHandler.removeCallbacksAndMessages(null);
+        mListeners.clear();
+
+    }
+
+    private void enqueue(final long id, final boolean prefetch) {
+
+        if (!mPending.add(id)) {
+
+            return;
+
+        }
+        final int generation = mGeneration;
+        final Article cached = mCache.get(id);
+        mExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (prefetch && !mPrefetchWindow.contains(id)) {
+
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+
+                            skipped(id, generation);
+
+                        }
+
+                    });
+                    return;
+
+                }
+                final Article article = query(id, cached);
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        deliver(id, article, generation);
+
+                    }
+
+                });
+
+            }
+
+        });
+
+    }
+
+    private void skipped(long id, int generation) {
+
+        if (generation != mGeneration) {
+
+            return;
+
+        }
+        mPending.remove(id);
+        // Someone started waiting for it while the prefetch was queued
+        if (mListeners.get(id) != null) {
+
+            enqueue(id, false);
+
+        }
+
+    }
+
+    private void deliver(long id, Article article, int generation) {
+
+        if (generation != mGeneration) {
+
+            return;
+
+        }
+        mPending.remove(id);
+        if (article == null) {
+
+            Log.e(TAG, "Error reading article " + id);
+            mCache.remove(id);
+            return;
+
+        }
+        if (article == mCache.get(id)) {
+
+            // Unchanged, the listeners already have it
+            return;
+
+        }
+
+        mCache.put(id, article);
+        final List<Listener> listeners = mListeners.get(id);
+        if (listeners != null) {
+
+            for (Listener listener : new ArrayList<>(listeners)) {
+
+                listener.onArticleLoaded(article);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Read one article and its paragraphs, or return {@code cached} without reading the
+     * paragraphs if the stored article has not changed since. Runs on the loading thread.
+     */
+    private Article query(long id, Article cached) {
+
+        final Cursor item = mResolver.query(ItemsContract.Items.buildItemUri(id),
+                ArticleLoader.DetailQuery.PROJECTION, null, null, null);
+        if (item == null) {
+
+            return null;
+
+        }
+        try {
+
+            if (!item.moveToFirst()) {
+
+                return null;
+
+            }
+            final String contentHash = item.getString(ArticleLoader.DetailQuery.CONTENT_HASH);
+            if (cached != null && contentHash != null &&
+                    contentHash.equals(cached.contentHash)) {
+
+                return cached;
+
+            }
+            final String[] paragraphs = queryParagraphs(id, 0, FIRST_PARAGRAPHS);
+            if (paragraphs == null) {
+
+                return null;
+
+            }
+            return new Article(id, item.getString(ArticleLoader.DetailQuery.TITLE),
+                    item.getString(ArticleLoader.DetailQuery.AUTHOR),
+                    item.getLong(ArticleLoader.DetailQuery.PUBLISHED_DATE),
+                    item.getString(ArticleLoader.DetailQuery.PHOTO_URL),
+                    item.getInt(ArticleLoader.DetailQuery.PARAGRAPH_COUNT), paragraphs,
+                    contentHash);
+
+        }
+        finally {
+
+            item.close();
+
+        }
+
+    }
+
+    /**
+     * Read a range of paragraphs in order. Runs on the loading thread.
+     */
+    private String[] queryParagraphs(long id, int from, int count) {
+
+        final Cursor cursor = mResolver.query(
+                ItemsContract.Paragraphs.buildRangeUri(id, from, count),
+                ParagraphQuery.PROJECTION, null, null, ItemsContract.Paragraphs.DEFAULT_SORT);
+        if (cursor == null) {
+
+            return null;
+
+        }
+        try {
+
+            final String[] paragraphs = new String[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+
+                paragraphs[i] = cursor.getString(ParagraphQuery.TEXT);
+
+            }
+            return paragraphs;
+
+        }
+        finally {
+
+            cursor.close();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.example.xyzreader.ui;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.AppCompatImageView;
+import android.util.AttributeSet;
+
+/**
+ * An image view whose height follows its width and a given aspect ratio, so it has its final
+ * size before the image arrives. Setting the image then never asks for a new layout.
+ */
+public class AspectRatioImageView extends AppCompatImageView {
+
+    private float mAspectRatio;
+    private boolean mSettingImage;
+
+    public AspectRatioImageView(Context context) {
+
+        super(context);
+
+    }
+
+    public AspectRatioImageView(Context context, AttributeSet attrs) {
+
+        super(context, attrs);
+
+    }
+
+    public AspectRatioImageView(Context context, AttributeSet attrs, int defStyleAttr) {
+
+        super(context, attrs, defStyleAttr);
+
+    }
+
+    /**
+     * The height a view of the given width has for an aspect ratio (width over height). Image
+     * requests made without the view, like preloads, must use this to get the same size.
+     */
+    static int heightFor(int width, float aspectRatio) {
+
+        return Math.round(width / aspectRatio);
+
+    }
+
+    /**
+     * Set the width over height ratio to size the view by, or 0 to size it like any other
+     * image view.
+     */
+    public void setAspectRatio(float aspectRatio) {
+
+        if (aspectRatio != mAspectRatio) {
+
+            mAspectRatio = aspectRatio;
+            requestLayout();
+
+        }
+
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+
+        if (mAspectRatio <= 0) {
+
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+
+        }
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        setMeasuredDimension(width, heightFor(width, mAspectRatio));
+
+    }
+
+    @Override
+    public void setImageDrawable(@Nullable Drawable drawable) {
+
+        // The size does not depend on the drawable, so only the image needs redrawing
+        mSettingImage = mAspectRatio > 0;
+        super.setImageDrawable(drawable);
+        mSettingImage = false;
+
+    }
+
+    @Override
+    public void requestLayout() {
+
+        if (!mSettingImage) {
+
+            super.requestLayout();
+
+        }
+
+    }
+
+}
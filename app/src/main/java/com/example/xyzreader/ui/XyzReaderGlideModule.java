@@ -0,0 +1,226 @@
+package com.example.xyzreader.ui;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.Excludes;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.integration.okhttp3.OkHttpLibraryGlideModule;
+import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.engine.cache.DiskLruCacheWrapper;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.module.AppGlideModule;
+import com.example.xyzreader.remote.NetworkClient;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Glide configuration for the app. Image requests go through the shared {@link NetworkClient}
+ * rather than Glide's own HttpURLConnection stack or the OkHttp integration's default client,
+ * and the caches are sized for the article corpus and counted in {@link CacheStats}.
+ */
+// The integration's own module would register a loader with a default client of its own
+@GlideModule
+@Excludes(OkHttpLibraryGlideModule.class)
+public class XyzReaderGlideModule extends AppGlideModule {
+
+    // Decoded images kept, in screens' worth of pixels: the grid a scroll back plus the hero
+    // photos of the pages next to the current one
+    private static final float MEMORY_CACHE_SCREENS = 3;
+    // Grid cells share a width but their heights follow each article's aspect ratio, so spare
+    // bitmaps rarely fit exactly. The pool reuses larger ones on API 19 and up, and a little
+    // more room keeps enough of them around while the grid scrolls.
+    private static final float BITMAP_POOL_SCREENS = 3;
+    // Source data of every thumbnail and photo of the feed, with room for a few refreshes
+    private static final long DISK_CACHE_SIZE = 100 * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "images";
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+
+        final MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(MEMORY_CACHE_SCREENS)
+                .setBitmapPoolScreens(BITMAP_POOL_SCREENS)
+                .build();
+        builder.setMemoryCache(new CountingResourceCache(calculator.getMemoryCacheSize()));
+        builder.setBitmapPool(new LruBitmapPool(calculator.getBitmapPoolSize()));
+
+        final File cacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        builder.setDiskCache(new DiskCache.Factory() {
+
+            @Nullable
+            @Override
+            public DiskCache build() {
+
+                return new CountingDiskCache(DiskLruCacheWrapper.create(cacheDir,
+                        DISK_CACHE_SIZE));
+
+            }
+
+        });
+
+    }
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide,
+                                   @NonNull Registry registry) {
+
+        registry.replace(GlideUrl.class, InputStream.class,
+                new OkHttpUrlLoader.Factory(NetworkClient.get()));
+
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+
+        return false;
+
+    }
+
+    /**
+     * Hit and miss counts of the memory and disk caches since the process started. Memory
+     * lookups only count images that are not on screen already. A disk load first looks for the
+     * decoded resource and then for the source data, so a source hit usually follows a miss.
+     */
+    public static class CacheStats {
+
+        private static final AtomicLong sMemoryHits = new AtomicLong();
+        private static final AtomicLong sMemoryMisses = new AtomicLong();
+        private static final AtomicLong sDiskHits = new AtomicLong();
+        private static final AtomicLong sDiskMisses = new AtomicLong();
+
+        private CacheStats() {
+
+        }
+
+        public static long getMemoryHits() {
+
+            return sMemoryHits.get();
+
+        }
+
+        public static long getMemoryMisses() {
+
+            return sMemoryMisses.get();
+
+        }
+
+        public static long getDiskHits() {
+
+            return sDiskHits.get();
+
+        }
+
+        public static long getDiskMisses() {
+
+            return sDiskMisses.get();
+
+        }
+
+        public static String summary() {
+
+            return "memory " + getMemoryHits() + "/" + (getMemoryHits() + getMemoryMisses()) +
+                    ", disk " + getDiskHits() + "/" + (getDiskHits() + getDiskMisses());
+
+        }
+
+    }
+
+    /**
+     * The engine takes a resource out of the memory cache with {@link #remove(Key)} when it
+     * looks one up, so that is where hits and misses are counted.
+     */
+    private static class CountingResourceCache extends LruResourceCache {
+
+        CountingResourceCache(long size) {
+
+            super(size);
+
+        }
+
+        @Nullable
+        @Override
+        public synchronized Resource<?> remove(@NonNull Key key) {
+
+            final Resource<?> resource = super.remove(key);
+            if (resource != null) {
+
+                CacheStats.sMemoryHits.incrementAndGet();
+
+            }
+            else {
+
+                CacheStats.sMemoryMisses.incrementAndGet();
+
+            }
+            return resource;
+
+        }
+
+    }
+
+    private static class CountingDiskCache implements DiskCache {
+
+        private final DiskCache mDiskCache;
+
+        CountingDiskCache(DiskCache diskCache) {
+
+            mDiskCache = diskCache;
+
+        }
+
+        @Nullable
+        @Override
+        public File get(Key key) {
+
+            final File file = mDiskCache.get(key);
+            if (file != null) {
+
+                CacheStats.sDiskHits.incrementAndGet();
+
+            }
+            else {
+
+                CacheStats.sDiskMisses.incrementAndGet();
+
+            }
+            return file;
+
+        }
+
+        @Override
+        public void put(Key key, Writer writer) {
+
+            mDiskCache.put(key, writer);
+
+        }
+
+        @Override
+        public void delete(Key key) {
+
+            mDiskCache.delete(key);
+
+        }
+
+        @Override
+        public void clear() {
+
+            mDiskCache.clear();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.example.xyzreader.remote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Conditional feed requests against a local server.
+ */
+public class RemoteEndpointUtilTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Thu, 20 Jun 2013 15:34:05 GMT";
+
+    private final OkHttpClient mClient = new OkHttpClient();
+    private MockWebServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+
+        mServer = new MockWebServer();
+        mServer.start();
+        mUrl = mServer.url("/feed").url();
+
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        mServer.shutdown();
+
+    }
+
+    @Test
+    public void firstFetchIsUnconditional() throws Exception {
+
+        mServer.enqueue(new MockResponse().setBody("[]").setHeader("ETag", ETAG));
+
+        final Response response = RemoteEndpointUtil.execute(mClient, mUrl, null, null);
+        try {
+
+            assertEquals(HttpURLConnection.HTTP_OK, response.code());
+            assertEquals("[]", response.body().string());
+
+        }
+        finally {
+
+            response.close();
+
+        }
+        final RecordedRequest request = mServer.takeRequest();
+        assertNull(request.getHeader("If-None-Match"));
+        assertNull(request.getHeader("If-Modified-Since"));
+
+    }
+
+    @Test
+    public void storedValidatorsAreSentAndNotModifiedIsReturned() throws Exception {
+
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+
+        final Response response = RemoteEndpointUtil.execute(mClient, mUrl, ETAG,
+                LAST_MODIFIED);
+        response.close();
+
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, response.code());
+        final RecordedRequest request = mServer.takeRequest();
+        assertEquals(ETAG, request.getHeader("If-None-Match"));
+        assertEquals(LAST_MODIFIED, request.getHeader("If-Modified-Since"));
+
+    }
+
+    @Test
+    public void changedFeedIsDownloadedInFull() throws Exception {
+
+        mServer.enqueue(new MockResponse().setBody("[{}]").setHeader("ETag", "\"v2\""));
+
+        final Response response = RemoteEndpointUtil.execute(mClient, mUrl, ETAG, null);
+        try {
+
+            assertEquals(HttpURLConnection.HTTP_OK, response.code());
+            assertEquals("\"v2\"", response.header("ETag"));
+            assertEquals("[{}]", response.body().string());
+
+        }
+        finally {
+
+            response.close();
+
+        }
+        assertNull(mServer.takeRequest().getHeader("If-Modified-Since"));
+
+    }
+
+    @Test
+    public void serverErrorIsThrown() throws Exception {
+
+        mServer.enqueue(new MockResponse().setResponseCode(
+                HttpURLConnection.HTTP_INTERNAL_ERROR));
+
+        try {
+
+            RemoteEndpointUtil.execute(mClient, mUrl, ETAG, LAST_MODIFIED).close();
+            fail("Expected an IOException");
+
+        }
+        catch (IOException expected) {
+
+            // Expected
+
+        }
+
+    }
+
+}